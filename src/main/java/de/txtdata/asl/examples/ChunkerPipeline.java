@@ -19,17 +19,23 @@
 package de.txtdata.asl.examples;
 
 import de.txtdata.asl.nlp.annotations.Annotation;
+import de.txtdata.asl.nlp.annotators.AbstractAnnotator;
 import de.txtdata.asl.nlp.annotators.AbstractCreator;
 import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.Span;
 import de.txtdata.asl.nlp.models.TextUnit;
 import de.txtdata.asl.nlp.models.Word;
+import de.txtdata.asl.nlp.tools.ITokenizer;
 import de.txtdata.asl.nlp.tools.OpenNLPSentenceSplitter;
 import de.txtdata.asl.nlp.tools.OpenNLPTagger;
 import de.txtdata.asl.nlp.tools.OpenNLPTokenizer;
+import de.txtdata.asl.nlp.tools.TaggerCache;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class implements a simple noun phrase chunker based on OpenNLP.
@@ -43,9 +49,15 @@ public class ChunkerPipeline extends AbstractCreator {
     private String openNlpModelDirectory = ".\\data\\models\\";
 
     private OpenNLPSentenceSplitter openNLPSentenceSplitter;
-    private OpenNLPTokenizer openNLPTokenizer;
+    private ITokenizer openNLPTokenizer;
     private OpenNLPTagger openNLPTagger;
 
+    // if set, createFromText() processes the sentences of a document in parallel on this pool.
+    private ForkJoinPool pool;
+
+    // further annotators, e.g. WhitelistAnnotators, that are run after chunking.
+    private List<AbstractAnnotator> annotators = new CopyOnWriteArrayList<>();
+
     public static void main(String[] args) {
         ChunkerPipeline pipeline = new ChunkerPipeline(Language.ENGLISH);
         List<TextUnit> analyzedSentences = pipeline.createFromText(pipeline.exampleSentence);
@@ -72,12 +84,77 @@ public class ChunkerPipeline extends AbstractCreator {
         this.openNLPTagger = new OpenNLPTagger(this.getLanguage(), this.openNlpModelDirectory);
     }
 
+    /**
+     * Gives the OpenNLP models back to the ModelRegistry, so they can be unloaded once no other pipeline uses them.
+     */
+    public void close() {
+        if (this.openNLPSentenceSplitter!=null) this.openNLPSentenceSplitter.close();
+        if (this.openNLPTokenizer!=null) this.openNLPTokenizer.close();
+        if (this.openNLPTagger!=null) this.openNLPTagger.close();
+        this.setParallelism(1);
+    }
+
+    /**
+     * Replaces the tokenizer, e.g. with a RuleBasedTokenizer, which is much faster than the OpenNLP tokenizer.
+     * The previous tokenizer is closed.
+     */
+    public void setTokenizer(ITokenizer tokenizer) {
+        ITokenizer previous = this.openNLPTokenizer;
+        this.openNLPTokenizer = tokenizer;
+        if (previous!=null && previous!=tokenizer) previous.close();
+    }
+
+    /**
+     * Lets the tagger keep its output for sentences it has seen before.
+     * @param cache The cache, or null to switch caching off.
+     */
+    public void setTaggerCache(TaggerCache cache) {
+        this.openNLPTagger.setCache(cache);
+    }
+
+    /**
+     * Adds an annotator that is run on each sentence after it has been tagged and chunked.
+     */
+    public void addAnnotator(AbstractAnnotator annotator) {
+        this.annotators.add(annotator);
+    }
+
+    /**
+     * Lets createFromText() tokenize, tag and chunk the sentences of a document in parallel.
+     * @param threads The maximum number of threads used per document; 1 or less for sequential processing.
+     */
+    public void setParallelism(int threads) {
+        ForkJoinPool old = this.pool;
+        this.pool = threads>1 ? new ForkJoinPool(threads) : null;
+        if (old!=null) old.shutdown();
+    }
+
+    public int getParallelism() {
+        return this.pool==null ? 1 : this.pool.getParallelism();
+    }
+
     public List<TextUnit> createFromText(String text) {
         List<String> sentences = this.openNLPSentenceSplitter.getSentences(text);
-        List<TextUnit> results = new ArrayList<>();
+        ForkJoinPool pool = this.pool;
+        if (pool!=null && sentences.size()>1) {
+            List<TextUnit> results = new ArrayList<>(sentences.size());
+            for (String sentence : sentences) {
+                results.add(new TextUnit(sentence));
+            }
+            this.annotateAll(results.stream(), pool);
+            return results;
+        }
+        List<List<Span>> tokens = new ArrayList<>(sentences.size());
         for (String sentence : sentences) {
-            TextUnit tu = new TextUnit(sentence);
-            this.annotate(tu);
+            tokens.add(this.openNLPTokenizer.getTokensAsSpans(sentence));
+        }
+        Word[][] words = this.openNLPTagger.getTaggedSentences(tokens);
+        List<TextUnit> results = new ArrayList<>(sentences.size());
+        for (int i=0; i<sentences.size(); i++) {
+            TextUnit tu = new TextUnit(sentences.get(i));
+            tu.setWords(new ArrayList<>(Arrays.asList(words[i])));
+            this.chunk(tu);
+            this.runAnnotators(tu);
             results.add(tu);
         }
         return results;
@@ -101,7 +178,13 @@ public class ChunkerPipeline extends AbstractCreator {
         List<Word> words = this.openNLPTagger.getTaggedWords(tokens);
         sentence.setWords(words);
         this.chunk(sentence);
+        this.runAnnotators(sentence);
+    }
 
+    private void runAnnotators(TextUnit sentence) {
+        for (AbstractAnnotator annotator : this.annotators) {
+            annotator.annotate(sentence);
+        }
     }
 
     /**
@@ -154,6 +154,14 @@ public class FeatureExtractor extends AbstractCreator {
         this.subsumedAnnotationsRemover = new SubsumedAnnotationsRemover(this.language, "nameSignatures");
     }
 
+    /**
+     * Gives the OpenNLP models back to the ModelRegistry, so they can be unloaded once no other pipeline uses them.
+     */
+    public void close() {
+        if (this.openNLPTokenizer!=null) this.openNLPTokenizer.close();
+        if (this.openNLPTagger!=null) this.openNLPTagger.close();
+    }
+
     /**
      * Creates a <code>TextUnit</code> from a string.
      * @param sentence The text to analyse. Output of sentence splitter. Should be one sentence.
@@ -77,6 +77,15 @@ public class POSPatternPipeline extends AbstractCreator {
         this.subsumedAnnotationsRemover = new SubsumedAnnotationsRemover(this.language, "germanWordTypes");
     }
 
+    /**
+     * Gives the OpenNLP models back to the ModelRegistry, so they can be unloaded once no other pipeline uses them.
+     */
+    public void close() {
+        if (this.openNLPSentenceSplitter!=null) this.openNLPSentenceSplitter.close();
+        if (this.openNLPTokenizer!=null) this.openNLPTokenizer.close();
+        if (this.openNLPTagger!=null) this.openNLPTagger.close();
+    }
+
     public List<TextUnit> createFromText(String text) {
         List<String> sentences = this.openNLPSentenceSplitter.getSentences(text);
         List<TextUnit> results = new ArrayList<>();
@@ -71,6 +71,14 @@ public class WhitelistPipeline extends AbstractCreator {
         this.whitelistAnnotator      = new WhitelistAnnotator(this.language, this.dictionariesLocation, true);
     }
 
+    /**
+     * Gives the OpenNLP models back to the ModelRegistry, so they can be unloaded once no other pipeline uses them.
+     */
+    public void close() {
+        if (this.openNLPSentenceSplitter!=null) this.openNLPSentenceSplitter.close();
+        if (this.openNLPTokenizer!=null) this.openNLPTokenizer.close();
+    }
+
     public List<TextUnit> createFromText(String text) {
         List<String> sentences = this.openNLPSentenceSplitter.getSentences(text);
         List<TextUnit> results = new ArrayList<>();
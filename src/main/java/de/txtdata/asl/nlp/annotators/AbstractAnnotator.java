@@ -20,6 +20,12 @@ package de.txtdata.asl.nlp.annotators;
 
 import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.TextUnit;
+import de.txtdata.asl.util.misc.AslException;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * Abstract class for an 'Annotator'. An Annotator analyses a piece of text and detects parts that carry
@@ -53,6 +59,40 @@ public abstract class AbstractAnnotator {
      */
     public abstract void annotate(TextUnit sentence);
 
+    /**
+     * Processes several pieces of text, e.g. all sentences of a document.
+     * By default, the TextUnits are annotated one after the other; use annotateAll(Stream, ForkJoinPool) to annotate
+     * them in parallel. Subclasses that can reuse state within a batch should override annotateAll(Stream).
+     * @param sentences The texts that should be processed.
+     */
+    public void annotateAll(List<TextUnit> sentences){
+        this.annotateAll(sentences.stream());
+    }
+
+    /**
+     * Annotates the TextUnits in the order of the stream, in parallel only if the stream is parallel.
+     */
+    public void annotateAll(Stream<TextUnit> sentences){
+        sentences.forEach(this::annotate);
+    }
+
+    /**
+     * Annotates the TextUnits in parallel on the given pool, which requires annotate() to be thread-safe. Annotators
+     * may block while they wait for pooled tools such as OpenNLP taggers, so the pool should be a dedicated one, not
+     * the common ForkJoinPool.
+     */
+    public void annotateAll(Stream<TextUnit> sentences, ForkJoinPool pool){
+        try{
+            pool.submit(() -> this.annotateAll(sentences.parallel())).get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AslException(e);
+        }catch(ExecutionException e){
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+            throw new AslException(e.getCause());
+        }
+    }
+
     public void setLanguage(Language language) { this.language = language; }
 
     public Language getLanguage(){
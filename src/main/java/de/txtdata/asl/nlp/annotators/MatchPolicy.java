@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.annotators;
+
+/**
+ * Determines which dictionary matches a RecursiveDictionaryAnnotator turns into annotations when matches overlap.
+ * Overlaps are resolved on word positions before any annotations are created. If several dictionary entries match
+ * exactly the same words, they are either all annotated or none of them.
+ */
+public enum MatchPolicy {
+
+    /**
+     * Every match is annotated, including matches that overlap or are contained in other matches.
+     */
+    ALL,
+
+    /**
+     * Scanning from left to right, the longest match that starts at the leftmost position is annotated, and scanning
+     * continues after its end.
+     */
+    LEFTMOST_LONGEST,
+
+    /**
+     * The longest matches are annotated first, then the longest ones that do not overlap them, and so on. If two
+     * matches of the same length overlap, the left one is annotated.
+     */
+    LONGEST_NON_OVERLAPPING
+}
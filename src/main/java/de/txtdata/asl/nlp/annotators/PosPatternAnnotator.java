@@ -19,14 +19,21 @@
 package de.txtdata.asl.nlp.annotators;
 
 import de.txtdata.asl.nlp.annotations.Annotation;
+import de.txtdata.asl.nlp.patterns.FeatureClasses;
+import de.txtdata.asl.nlp.patterns.PosPattern;
+import de.txtdata.asl.nlp.patterns.PosPatternIndex;
+import de.txtdata.asl.nlp.patterns.PosPatternNode;
+import de.txtdata.asl.nlp.patterns.WordFeatures;
+import de.txtdata.asl.util.dataStructures.ITokenAutomaton;
+import de.txtdata.asl.util.dataStructures.KeyValuePairList;
 import de.txtdata.asl.util.dataStructures.RecursiveDictionary;
 import de.txtdata.asl.util.misc.AslException;
 import de.txtdata.asl.nlp.models.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Extends a WhitelistAnnotator so that that matching of a string in a dictionary against a word in a text isn't
@@ -34,20 +41,41 @@ import java.util.Set;
  */
 public class PosPatternAnnotator extends WhitelistAnnotator {
 
-    private static String DIVIDER = "\\.";      // string is a regex
-    private static String DIVIDER_ESCAPE = "§"; // not a regex, just a plain string.
+    // nodes with fewer keys are matched by testing every key, without building a PosPatternIndex.
+    private static final int MIN_INDEXED_KEYS = 8;
+    // bound for caching which keys of a node match words of the same FeatureClass.
+    private static final int MAX_CACHED_CLASSES_PER_NODE = 4096;
 
     private int removeCharactersFromPattern = 1;
     private int allowAddingCharactersFromPattern = 3;
 
+    // dictionary keys parsed into PosPatterns, so that each key is parsed only once. Replaced on reload.
+    private volatile Map<String, PosPattern> patterns = new ConcurrentHashMap<>();
+    // matching data of the dictionary nodes, keyed by node identity. Replaced on reload.
+    private volatile Map<RecursiveDictionary<DictionaryEntry>, PosPatternNode<DictionaryEntry>> nodes = new ConcurrentHashMap<>();
+    // the conditions of the patterns, by which words are grouped for caching. Replaced with the nodes.
+    private volatile FeatureClasses featureClasses = new FeatureClasses(this.removeCharactersFromPattern,
+            this.allowAddingCharactersFromPattern);
+    // changed whenever the matching behavior changes, so that the matching data of the nodes is rebuilt.
+    private volatile int version = 0;
+    private final ThreadLocal<WordFeatures> wordFeatures = ThreadLocal.withInitial(WordFeatures::new);
+    private final ThreadLocal<PosPatternIndex.Candidates> candidates = ThreadLocal.withInitial(PosPatternIndex.Candidates::new);
+
     protected PosPatternAnnotator(){}
 
     public PosPatternAnnotator(Language lang, String directory){
         super(lang, directory);
+        this.compilePatterns(this.completeDictionary);
     }
 
     public PosPatternAnnotator(Language lang, String directory, boolean ignoreCase){
         super(lang, directory, ignoreCase);
+        this.compilePatterns(this.completeDictionary);
+    }
+
+    public PosPatternAnnotator(Language lang, String directory, boolean ignoreCase, int loadingThreads){
+        super(lang, directory, ignoreCase, loadingThreads);
+        this.compilePatterns(this.completeDictionary);
     }
 
     /**
@@ -58,6 +86,30 @@ public class PosPatternAnnotator extends WhitelistAnnotator {
     public void overrideMorphologyMatchingBehavior(int removeCharactersFromPattern, int allowAddingCharactersFromPattern){
         this.removeCharactersFromPattern = removeCharactersFromPattern;
         this.allowAddingCharactersFromPattern = allowAddingCharactersFromPattern;
+        this.version++;
+        FeatureClasses classes = new FeatureClasses(removeCharactersFromPattern, allowAddingCharactersFromPattern);
+        for (PosPattern pattern : this.patterns.values()) classes.add(pattern);
+        this.featureClasses = classes;
+        this.nodes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * POS patterns cannot be matched by looking up single token IDs, so the TokenAutomaton used by
+     * WhitelistAnnotator.compile() is not applicable here.
+     */
+    @Override
+    public boolean supportsCompilation(){
+        return false;
+    }
+
+    /**
+     * Whether the keys of a dictionary node are matched all at once with its PosPatternNode, instead of calling
+     * matches() and wildCardMatches() for each key. Subclasses that override getMatches(), matches(),
+     * wildCardMatches() or getTildeMatch() to change which words match must override this method to return false.
+     */
+    @Override
+    protected boolean useIndexedMatching(){
+        return true;
     }
 
     @Override
@@ -65,10 +117,72 @@ public class PosPatternAnnotator extends WhitelistAnnotator {
         super.annotate(sentence);
     }
 
+    /**
+     * Parses the keys of a reloaded dictionary into a new map, so that the patterns and matching data of removed
+     * entries are dropped.
+     */
+    @Override
+    protected void replaceDictionary(RecursiveDictionary<DictionaryEntry> dictionary, ITokenAutomaton<DictionaryEntry> automaton){
+        Map<String, PosPattern> patterns = new ConcurrentHashMap<>();
+        FeatureClasses classes = new FeatureClasses(this.removeCharactersFromPattern,
+                this.allowAddingCharactersFromPattern);
+        this.compilePatterns(dictionary, patterns, classes);
+        super.replaceDictionary(dictionary, automaton);
+        this.patterns = patterns;
+        this.featureClasses = classes;
+        this.nodes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Parses all keys in the given dictionary into PosPatterns, so that this doesn't happen while annotating.
+     */
+    protected void compilePatterns(RecursiveDictionary<DictionaryEntry> dictionary){
+        this.compilePatterns(dictionary, this.patterns, this.featureClasses);
+    }
+
+    private void compilePatterns(RecursiveDictionary<DictionaryEntry> dictionary, Map<String, PosPattern> patterns,
+                                 FeatureClasses classes){
+        if (dictionary==null) return;
+        for (String key : dictionary.keys()){
+            this.getPattern(key, patterns, classes);
+            this.compilePatterns(dictionary.get(key), patterns, classes);
+        }
+        this.compilePatterns(dictionary.getOptional(), patterns, classes);
+    }
+
+    /**
+     * @return The parsed form of the given dictionary key.
+     */
+    protected PosPattern getPattern(String posPattern){
+        return this.getPattern(posPattern, this.patterns, this.featureClasses);
+    }
+
+    /**
+     * Newly parsed patterns are registered in the given FeatureClasses, so that words are classified by their
+     * conditions as well.
+     */
+    private PosPattern getPattern(String posPattern, Map<String, PosPattern> patterns, FeatureClasses classes){
+        PosPattern pattern = patterns.get(posPattern);
+        if (pattern==null){
+            pattern = patterns.computeIfAbsent(posPattern, key -> {
+                PosPattern compiled = PosPattern.compile(key, this.ignoreCase, this::getTildeMatch);
+                classes.add(compiled);
+                return compiled;
+            });
+        }
+        return pattern;
+    }
+
+    private WordFeatures getWordFeatures(Word word){
+        WordFeatures features = this.wordFeatures.get();
+        if (!features.isSetTo(word, this.ignoreCase)) features.set(word, this.ignoreCase);
+        return features;
+    }
+
     @Override
     protected List<Annotation> createAnnotations(RecursiveDictionaryMatch<DictionaryEntry> match, TextUnit textPiece, int start, int end){
         List<Annotation> results = new ArrayList<>();
-        for (DictionaryEntry entry : match.dictionary.meanings){
+        for (DictionaryEntry entry : match.dictionary.getMeanings()){
             int startPos = textPiece.getWords().get(start).getStarts();
             int endPos = textPiece.getWords().get(end).getEnds();
             String surface = textPiece.getSurfaceText(startPos, endPos);
@@ -81,131 +195,151 @@ public class PosPatternAnnotator extends WhitelistAnnotator {
         return results;
     }
 
+    /**
+     * Matches the word against all keys of the dictionary node at once, using the PosPatternNode of the node. If
+     * useIndexedMatching() returns false, getMatches() is called instead.
+     */
+    @Override
+    protected void collectMatches(Word word, RecursiveDictionary<DictionaryEntry> dictionary, MatchCollector collector){
+        if (this.useIndexedMatching()){
+            this.collectIndexedMatches(word, dictionary, collector);
+        }else{
+            this.collectFromGetMatches(word, dictionary, collector);
+        }
+    }
+
+    private void collectIndexedMatches(Word word, RecursiveDictionary<DictionaryEntry> dictionary, MatchCollector collector){
+        WordFeatures features = this.getWordFeatures(word);
+        PosPatternNode<DictionaryEntry> node = this.getNode(dictionary);
+        PosPatternIndex.Candidates matches = this.candidates.get();
+        node.match(features, matches);
+        int[] wildcards = node.getWildcards();
+        // visit the matching keys and the wildcards in the order of the keys.
+        int m = 0;
+        int w = 0;
+        while (m<matches.size() || w<wildcards.length){
+            int key;
+            if (m==matches.size()) key = wildcards[w];
+            else if (w==wildcards.length) key = matches.get(m);
+            else key = Math.min(matches.get(m), wildcards[w]);
+            String posPattern = node.getKey(key);
+            if (m<matches.size() && matches.get(m)==key){
+                collector.add(dictionary.get(posPattern), word.getSurface(), posPattern);
+                m++;
+            }
+            if (w<wildcards.length && wildcards[w]==key){
+                this.collectWildCardMatches(word, node.getPattern(key), dictionary, collector);
+                w++;
+            }
+        }
+    }
+
     @Override
     public List<RecursiveDictionaryMatch<DictionaryEntry>> getMatches(Word word, RecursiveDictionary<DictionaryEntry> dictionary){
         List<RecursiveDictionaryMatch<DictionaryEntry>> results = new ArrayList<>();
-        Set<String> keys = dictionary.map.keySet();
-        for (String posPattern : keys){
+        if (this.useIndexedMatching()){
+            this.collectIndexedMatches(word, dictionary, new ListCollector(results));
+            return results;
+        }
+        for (String posPattern : dictionary.keys()){
             if (this.matches(word, posPattern)){
-                RecursiveDictionaryMatch dm = new RecursiveDictionaryMatch(dictionary.map.get(posPattern), word.getSurface(), posPattern);
-                results.add(dm);
+                results.add(new RecursiveDictionaryMatch<>(dictionary.get(posPattern), word.getSurface(), posPattern));
             }
             results.addAll(this.wildCardMatches(word, posPattern, dictionary));
         }
         return results;
     }
 
-    protected boolean matches(Word word, String posPattern){
-        if (posPattern.equals("+")) return true;
-        if (posPattern.equals("")) return false;
-        List<String> parts = Arrays.asList(posPattern.split(DIVIDER));
-        if (parts.size()>=1){
-            String surface = word.getSurface();
-            if (this.ignoreCase)  surface = surface.toLowerCase();
-            boolean b = partEquals(surface, parts.get(0));
-            if (!b) return false;
-        }
-        if (parts.size()>=2 && !(word.getRoot()==null && parts.get(1).equals(""))){
-            String part = parts.get(1);
-            if (this.ignoreCase)  part = part.toLowerCase();
-            boolean b = partEquals(word.getRoot(), part);
-            if (!b) return false;
-        }
-        if (parts.size()>=3){
-            boolean b = partEquals(word.getPOS().toLowerCase(), parts.get(2).toLowerCase());
-            if (!b) return false;
-        }
-        if (parts.size()>=4){
-            if (word.getMorph()==null) return false;
-            List<String> ruleMorphs = Arrays.asList(parts.get(3).toLowerCase().split("\\|"));
-            List<String> wordMorphs = Arrays.asList(word.getMorph().toLowerCase().split("\\|"));
-            for (String ruleMorph : ruleMorphs){
-                if (!wordMorphs.contains(ruleMorph)) return false;
-            }
+    /**
+     * @return The matching data of the given dictionary node. It is built when first needed and kept until the
+     * dictionary is reloaded or the matching behavior changes.
+     */
+    protected PosPatternNode<DictionaryEntry> getNode(RecursiveDictionary<DictionaryEntry> dictionary){
+        Map<RecursiveDictionary<DictionaryEntry>, PosPatternNode<DictionaryEntry>> nodes = this.nodes;
+        int version = this.version;
+        PosPatternNode<DictionaryEntry> node = nodes.get(dictionary);
+        if (node!=null && node.isValid(version)) return node;
+        PosPatternIndex index = null;
+        if (dictionary.getKeyCount()>=MIN_INDEXED_KEYS && this.useIndexedMatching()){
+            index = new PosPatternIndex(dictionary, this::getPattern, true,
+                    this.removeCharactersFromPattern, this.allowAddingCharactersFromPattern);
         }
-        return true;
+        node = new PosPatternNode<>(dictionary, version, this::getPattern, index, this.featureClasses,
+                MAX_CACHED_CLASSES_PER_NODE);
+        nodes.put(dictionary, node);
+        return node;
+    }
+
+    protected boolean matches(Word word, String posPattern){
+        return this.getPattern(posPattern).matches(this.getWordFeatures(word));
     }
 
     protected List<RecursiveDictionaryMatch<DictionaryEntry>> wildCardMatches(Word word, String posPattern, RecursiveDictionary<DictionaryEntry> dictionary){
         List<RecursiveDictionaryMatch<DictionaryEntry>> results = new ArrayList<>();
-        if(posPattern.equals("*")){
-            RecursiveDictionary<DictionaryEntry> rd = new RecursiveDictionary<>();
-            rd.map.put("*",dictionary.map.get(posPattern));
-            results.add(new RecursiveDictionaryMatch<DictionaryEntry>(rd, word.getSurface(), posPattern));
-            results.add(new RecursiveDictionaryMatch<DictionaryEntry>(dictionary.map.get(posPattern), word.getSurface(), posPattern));
-        }else if (posPattern.startsWith("*")){
-            try {
-                int b1 = posPattern.indexOf("{");
-                int c = posPattern.indexOf(",");
-                int b2 = posPattern.indexOf("}");
-                if (b2 > 0 && b2 > c && c > b1) {
-                    String s1 = posPattern.substring(b1 + 1, c);
-                    String s2 = posPattern.substring(c + 1, b2);
-                    Integer i1 = Integer.parseInt(s1);
-                    Integer i2 = Integer.parseInt(s2);
-
-                    if (i1==1){
-                        results.add(new RecursiveDictionaryMatch<DictionaryEntry>(dictionary.map.get(posPattern), word.getSurface(), posPattern));
-                    }
-                    if (i1>1){
-                        i1--;
-                    }
-                    if (i2>1){
-                        i2--;
-                        String newPosPattern = "*{"+i1+","+i2+"}";
-                        RecursiveDictionary<DictionaryEntry> rd = new RecursiveDictionary<>();
-                        rd.map.put(newPosPattern,dictionary.map.get(posPattern));
-                        results.add(new RecursiveDictionaryMatch<DictionaryEntry>(rd, word.getSurface(), posPattern));
-                    }
-
-                }
-            }catch(Exception e){
-                throw new AslException(e);
-            }
+        PosPattern pattern = this.getPattern(posPattern);
+        if (pattern.isWildcard()){
+            this.collectWildCardMatches(word, pattern, dictionary, new ListCollector(results));
         }
         return results;
     }
 
     /**
-     * @param token The actual user text and its linguistic analysis
-     * @param patternPart The dictionary entry
-     * @return true if match, false otherwise
+     * Adds the nodes reached by matching the word with a wildcard: the target of the wildcard if the match may end
+     * here, and the counter state that matches the following words if it may continue.
      */
-    private boolean partEquals(String token, String patternPart){
-        if (token==null) return false;
-        token = token.replaceAll(DIVIDER, DIVIDER_ESCAPE);
-        if (patternPart.length()==0){
-            return true;
-        }else if (token.equals(patternPart)) {
-            return true;
-        }else if (patternPart.startsWith("/")){
-            token = token.toUpperCase();
-            patternPart = patternPart.substring(1,patternPart.length()).toUpperCase();
-            if (token.endsWith(patternPart)) return true;
-        }else if (patternPart.endsWith("/")){
-            token = token.toUpperCase();
-            patternPart = patternPart.substring(0,patternPart.length()-1).toUpperCase();
-            if (token.startsWith(patternPart)) return true;
-        }else if (patternPart.endsWith("~")){
-            if (this.getTildeMatch(patternPart, token)) return true;
-        }else if (patternPart.startsWith("(") && patternPart.endsWith(")")){
-            patternPart = patternPart.substring(1,patternPart.length()-1);
-            List<String> parts = Arrays.asList(patternPart.split("\\|"));
-            for (String part : parts){
-                boolean b = partEquals(token, part);
-                if (b) return true;
-            }
+    private void collectWildCardMatches(Word word, PosPattern pattern, RecursiveDictionary<DictionaryEntry> dictionary, MatchCollector collector){
+        if (pattern.getWildcardError()!=null) throw new AslException(pattern.getWildcardError());
+        String posPattern = pattern.getKey();
+        RecursiveDictionary<DictionaryEntry> target = dictionary.get(posPattern);
+        // "*" has always continued before ending, counters end before continuing.
+        boolean star = posPattern.equals("*");
+        if (pattern.exitsWildcard() && !star){
+            collector.add(target, word.getSurface(), posPattern);
+        }
+        if (pattern.getNextWildcard()!=null){
+            RecursiveDictionary<DictionaryEntry> counter = this.getNode(target).getWildcardSource(pattern.getNextWildcard());
+            collector.add(counter, word.getSurface(), posPattern);
+        }
+        if (star){
+            collector.add(target, word.getSurface(), posPattern);
         }
-        return false;
     }
 
+    /**
+     * Collects matches as RecursiveDictionaryMatch objects, for the methods that return them as a list.
+     */
+    private class ListCollector extends MatchCollector{
+
+        private List<RecursiveDictionaryMatch<DictionaryEntry>> results;
+
+        private ListCollector(List<RecursiveDictionaryMatch<DictionaryEntry>> results){
+            this.results = results;
+        }
+
+        @Override
+        public void add(RecursiveDictionary<DictionaryEntry> node, String surface, String pattern){
+            this.results.add(new RecursiveDictionaryMatch<>(node, surface, pattern));
+        }
+
+        @Override
+        public void add(RecursiveDictionary<DictionaryEntry> node, KeyValuePairList<String,String> matches){
+            this.results.add(new RecursiveDictionaryMatch<>(node, matches));
+        }
+    }
+
+    /**
+     * @param pattern A pattern part ending with a tilde.
+     * @param text The part of the word it is matched against.
+     */
     protected boolean getTildeMatch(String pattern, String text){
+        // toLowerCase() returns the string itself if there is nothing to change, the lengths are compared after
+        // lowercasing since it may change them.
         text = text.toLowerCase();
         pattern = pattern.toLowerCase();
         if (pattern.length()> this.removeCharactersFromPattern) {
-            pattern = pattern.substring(0, pattern.length() - (1 + this.removeCharactersFromPattern));
-            if (text.startsWith(pattern) && text.length() - pattern.length() < (
-                    1 + this.removeCharactersFromPattern + this.allowAddingCharactersFromPattern))
+            int length = pattern.length() - (1 + this.removeCharactersFromPattern);
+            if (text.length() - length < 1 + this.removeCharactersFromPattern + this.allowAddingCharactersFromPattern
+                    && text.regionMatches(0, pattern, 0, length))
                 return true;
         }
         return false;
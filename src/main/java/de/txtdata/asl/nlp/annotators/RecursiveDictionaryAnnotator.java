@@ -22,22 +22,32 @@ import de.txtdata.asl.nlp.annotations.Annotation;
 import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.TextUnit;
 import de.txtdata.asl.nlp.models.Word;
+import de.txtdata.asl.util.dataStructures.KeyValuePair;
 import de.txtdata.asl.util.dataStructures.KeyValuePairList;
 import de.txtdata.asl.util.dataStructures.RecursiveDictionary;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 /**
  * Abstract implementation of a fairly fast algorithm to match (many) dictionary entries against input text, which in
  * many ways resembles a trie.
  * All dictionaries are kept in memory, so if the dictionaries become very large, this isn't the right approach.
+ * The partial matches of a sentence are kept in primitive arrays that are reused by all sentences annotated on the same
+ * thread. The matched words and patterns of a match are only collected if an annotation is created for it.
  * @param <T>
  */
 public abstract class RecursiveDictionaryAnnotator<T> extends AbstractAnnotator {
 
-    // contains all the dictionaries.
-    protected RecursiveDictionary<T> completeDictionary = new RecursiveDictionary<>();
+    // contains all the dictionaries. Replaced as a whole when the dictionaries are reloaded.
+    protected volatile RecursiveDictionary<T> completeDictionary = new RecursiveDictionary<>();
+
+    protected MatchPolicy matchPolicy = MatchPolicy.ALL;
+
+    private final ThreadLocal<MatcherState> matcherStates = ThreadLocal.withInitial(MatcherState::new);
 
     protected RecursiveDictionaryAnnotator(){}
 
@@ -48,68 +58,371 @@ public abstract class RecursiveDictionaryAnnotator<T> extends AbstractAnnotator
     protected abstract List<Annotation> createAnnotations(RecursiveDictionaryMatch<T> match, TextUnit textUnit, int start, int end);
     protected abstract List<RecursiveDictionaryMatch<T>> getMatches(Word word, RecursiveDictionary<T> dictionary);
 
+    /**
+     * Passes all children of the dictionary node that match the word to the collector.
+     * The default implementation calls getMatches(). Subclasses may override this method, so that no lists and
+     * RecursiveDictionaryMatch objects need to be created for each word.
+     */
+    protected void collectMatches(Word word, RecursiveDictionary<T> dictionary, MatchCollector collector){
+        this.collectFromGetMatches(word, dictionary, collector);
+    }
+
+    protected final void collectFromGetMatches(Word word, RecursiveDictionary<T> dictionary, MatchCollector collector){
+        List<RecursiveDictionaryMatch<T>> matches = this.getMatches(word, dictionary);
+        if (matches==null) return;
+        for (RecursiveDictionaryMatch<T> match : matches){
+            collector.add(match.dictionary, match.matches);
+        }
+    }
+
     public void annotate(TextUnit sentence){
-        List<Annotation> results = new ArrayList<>();
-        List<RecursiveDictionaryMatch<T>> dictionaries = new ArrayList<>();
-        List<Integer> startPos = new ArrayList<>();
-        for (int i=0; sentence.getWords().size()>i ;i++){
-            Word word = sentence.getWords().get(i);
-            if (word.getSurface().trim().equals("")) continue; // ignore whitespace, if present
-            List<RecursiveDictionaryMatch<T>> newDictionaries = new ArrayList<>();
-            List<Integer> newStartPos = new ArrayList<>();
-            int j=-1;
-            for (RecursiveDictionaryMatch<T> dic : dictionaries){
-                j++;
-                List<RecursiveDictionaryMatch<T>> newDics = this.getMatches(word, dic.dictionary);
-                if (newDics == null) continue;
-                for (RecursiveDictionaryMatch<T> newDic : newDics){
-                    if (!newDic.dictionary.meanings.isEmpty()) {
-                        List<Annotation> toAdd = this.createAnnotations(newDic, sentence, startPos.get(j), i);
-                        results.addAll(toAdd);
-                    }
-                    newDictionaries.add(newDic);
-                    newDic.matches.addAll(0, dic.matches);
-                    newStartPos.add(startPos.get(j));
+        // use the same dictionary for the whole sentence, even if it is replaced in the meantime.
+        RecursiveDictionary<T> completeDictionary = this.completeDictionary;
+        MatcherState state = this.acquireMatcherState();
+        try{
+            state.begin(completeDictionary);
+            List<Word> words = sentence.getWords();
+            for (int i=0; words.size()>i ;i++){
+                Word word = words.get(i);
+                if (word.getSurface().trim().equals("")) continue; // ignore whitespace, if present
+                state.beginWord(i);
+                for (int j=0; j<state.size; j++){
+                    state.continueFrom(j);
+                    this.collectMatches(word, state.nodes[j], state);
                 }
-            }
-            dictionaries = newDictionaries;
-            startPos = newStartPos;
-
-            List<RecursiveDictionaryMatch<T>> rds = this.getMatches(word, this.completeDictionary);
-            if (rds!=null){
-                for(RecursiveDictionaryMatch<T> dm : rds) {
-                    dictionaries.add(dm);
-                    startPos.add(i);
-                    if (!dm.dictionary.meanings.isEmpty()) {
-                        List<Annotation> toAdd = this.createAnnotations(dm, sentence, i, i);
-                        results.addAll(toAdd);
-                    }
+                for (int j=0; j<state.rootCount; j++){
+                    state.startFromRoot();
+                    this.collectMatches(word, state.roots[j], state);
                 }
+                state.endWord();
             }
+            this.addSelectedAnnotations(sentence, state);
+        }finally{
+            this.releaseMatcherState(state);
+        }
+    }
+
+    private void addSelectedAnnotations(TextUnit sentence, MatcherState state){
+        SpanCandidates<RecursiveDictionary<T>> candidates = state.candidates;
+        if (candidates.size()==0) return;
+        List<Annotation> results = new ArrayList<>();
+        boolean[] selected = candidates.select(this.matchPolicy);
+        for (int i=0; i<candidates.size(); i++){
+            if (!selected[i]) continue;
+            RecursiveDictionaryMatch<T> match = new RecursiveDictionaryMatch<>(candidates.get(i), state.getTrailMatches(candidates.getRef(i)));
+            results.addAll(this.createAnnotations(match, sentence, candidates.getStart(i), candidates.getEnd(i)));
         }
         sentence.addAnnotations(results);
     }
 
+    /**
+     * @return The matcher state of the current thread, or a new one if it is already in use, e.g. because an
+     * annotator calls annotate() from within createAnnotations().
+     */
+    protected MatcherState acquireMatcherState(){
+        MatcherState state = this.matcherStates.get();
+        if (state.inUse) return new MatcherState();
+        state.inUse = true;
+        return state;
+    }
+
+    protected void releaseMatcherState(MatcherState state){
+        state.clear();
+        state.inUse = false;
+    }
 
     public RecursiveDictionary<T> query(RecursiveDictionary<T> dictionary, String key){
-        RecursiveDictionary<T> dic = dictionary.map.get(key);
+        RecursiveDictionary<T> dic = dictionary.get(key);
         return dic;
     }
 
+    /**
+     * Determines how overlapping matches are handled. Matches that are not selected by the policy are discarded before
+     * annotations are created for them. Default is MatchPolicy.ALL.
+     */
+    public void setMatchPolicy(MatchPolicy matchPolicy){
+        this.matchPolicy = matchPolicy;
+    }
+
+    public MatchPolicy getMatchPolicy(){
+        return this.matchPolicy;
+    }
+
     public RecursiveDictionary<T> getDictionary(){
         return this.completeDictionary;
     }
 
+    /**
+     * Turns the dictionary into its compact, read-only form. Matching works as before, but the memory footprint is
+     * much smaller. No entries can be added afterwards.
+     */
+    public void freeze(){
+        this.completeDictionary.freeze();
+    }
+
     protected class RecursiveDictionaryMatch<T>{
         public RecursiveDictionary<T> dictionary;
         public KeyValuePairList<String,String> matches = new KeyValuePairList<>();
 
-        public RecursiveDictionaryMatch(RecursiveDictionary dictionary, String surface, String pattern){
+        public RecursiveDictionaryMatch(RecursiveDictionary<T> dictionary, String surface, String pattern){
             this.dictionary = dictionary;
             this.matches.add(surface,pattern);
         }
 
+        public RecursiveDictionaryMatch(RecursiveDictionary<T> dictionary, KeyValuePairList<String,String> matches){
+            this.dictionary = dictionary;
+            this.matches = matches;
+        }
+
+
+    }
+
+    /**
+     * Receives the dictionary nodes that match a word, see collectMatches().
+     */
+    protected abstract class MatchCollector{
+
+        /**
+         * @param node The dictionary node that was reached by matching the word.
+         * @param surface The surface of the word.
+         * @param pattern The key of the node that matched the word.
+         */
+        public abstract void add(RecursiveDictionary<T> node, String surface, String pattern);
+
+        public abstract void add(RecursiveDictionary<T> node, KeyValuePairList<String,String> matches);
+    }
+
+    /**
+     * Holds the partial matches while a sentence is annotated. Each partial match is a dictionary node, the position
+     * of the word at which the match started, and an entry in the trail. The trail stores the matched surfaces and
+     * patterns of all partial matches, each entry pointing to the entry of the previous word, so that extending a
+     * match does not copy anything.
+     */
+    protected class MatcherState extends MatchCollector{
+
+        private boolean inUse = false;
+        private boolean removeDuplicates;
+
+        // nodes that can be reached from the root without consuming a word.
+        private RecursiveDictionary<T>[] roots = newArray(4);
+        private int rootCount;
+
+        // partial matches after the previous word, and after the current word.
+        private RecursiveDictionary<T>[] nodes = newArray(16);
+        private int[] starts = new int[16];
+        private int[] trails = new int[16];
+        private int size;
+        private RecursiveDictionary<T>[] nextNodes = newArray(16);
+        private int[] nextStarts = new int[16];
+        private int[] nextTrails = new int[16];
+        private int nextSize;
+
+        // only used with optional tokens: for each node, the last partial match after the current word that ends in
+        // it, and for each partial match the previous one that ends in the same node, or -1.
+        private IdentityHashMap<RecursiveDictionary<T>, Integer> lastByNode;
+        private int[] previousByNode = new int[16];
+
+        private int[] trailParents = new int[64];
+        private String[] trailSurfaces = new String[64];
+        private String[] trailPatterns = new String[64];
+        private int trailSize;
+
+        protected SpanCandidates<RecursiveDictionary<T>> candidates = new SpanCandidates<>();
+        protected int[] positions = new int[16];
+
+        // the word that is currently matched, and the partial match that is continued.
+        private int position;
+        private int currentStart;
+        private int currentTrail;
+
+        private void begin(RecursiveDictionary<T> dictionary){
+            this.removeDuplicates = dictionary.hasOptionalTokens();
+            if (this.removeDuplicates && this.lastByNode==null) this.lastByNode = new IdentityHashMap<>();
+            this.rootCount = 0;
+            this.addRoot(dictionary);
+        }
+
+        private void addRoot(RecursiveDictionary<T> node){
+            if (this.rootCount==this.roots.length) this.roots = Arrays.copyOf(this.roots, this.rootCount*2);
+            this.roots[this.rootCount++] = node;
+            RecursiveDictionary<T> optional = node.getOptional();
+            if (optional==null) return;
+            if (this.rootCount==this.roots.length) this.roots = Arrays.copyOf(this.roots, this.rootCount*2);
+            this.roots[this.rootCount++] = optional;
+            for (String key : optional.keys()){
+                this.addRoot(optional.get(key));
+            }
+        }
+
+        private void beginWord(int position){
+            this.position = position;
+            this.nextSize = 0;
+        }
+
+        private void continueFrom(int index){
+            this.currentStart = this.starts[index];
+            this.currentTrail = this.trails[index];
+        }
+
+        private void startFromRoot(){
+            this.currentStart = this.position;
+            this.currentTrail = -1;
+        }
+
+        private void endWord(){
+            this.clearLastByNode();
+            RecursiveDictionary<T>[] nodes = this.nodes;
+            int[] starts = this.starts;
+            int[] trails = this.trails;
+            Arrays.fill(nodes, 0, this.size, null);
+            this.nodes = this.nextNodes;
+            this.starts = this.nextStarts;
+            this.trails = this.nextTrails;
+            this.size = this.nextSize;
+            this.nextNodes = nodes;
+            this.nextStarts = starts;
+            this.nextTrails = trails;
+            this.nextSize = 0;
+        }
+
+        private void clear(){
+            this.clearLastByNode();
+            Arrays.fill(this.roots, 0, this.rootCount, null);
+            Arrays.fill(this.nodes, 0, this.size, null);
+            Arrays.fill(this.nextNodes, 0, this.nextSize, null);
+            Arrays.fill(this.trailSurfaces, 0, this.trailSize, null);
+            Arrays.fill(this.trailPatterns, 0, this.trailSize, null);
+            this.rootCount = 0;
+            this.size = 0;
+            this.nextSize = 0;
+            this.trailSize = 0;
+            this.candidates.clear();
+        }
+
+        @Override
+        public void add(RecursiveDictionary<T> node, String surface, String pattern){
+            int trail = this.addToTrail(this.currentTrail, surface, pattern);
+            this.addWithSkips(node, trail);
+        }
+
+        @Override
+        public void add(RecursiveDictionary<T> node, KeyValuePairList<String,String> matches){
+            int trail = this.currentTrail;
+            for (KeyValuePair<String,String> match : matches){
+                trail = this.addToTrail(trail, match.key, match.value);
+            }
+            this.addWithSkips(node, trail);
+        }
+
+        private int addToTrail(int parent, String surface, String pattern){
+            if (this.trailSize==this.trailParents.length){
+                int length = this.trailSize*2;
+                this.trailParents = Arrays.copyOf(this.trailParents, length);
+                this.trailSurfaces = Arrays.copyOf(this.trailSurfaces, length);
+                this.trailPatterns = Arrays.copyOf(this.trailPatterns, length);
+            }
+            this.trailParents[this.trailSize] = parent;
+            this.trailSurfaces[this.trailSize] = surface;
+            this.trailPatterns[this.trailSize] = pattern;
+            return this.trailSize++;
+        }
+
+        /**
+         * Adds the node, and all nodes that can be reached from it by skipping optional tokens, to the partial
+         * matches, and those that have meanings to the candidates for annotations.
+         */
+        private void addWithSkips(RecursiveDictionary<T> node, int trail){
+            this.addPartialMatch(node, trail);
+            RecursiveDictionary<T> optional = node.getOptional();
+            if (optional==null) return;
+            this.addPartialMatch(optional, trail);
+            for (String key : optional.keys()){
+                this.addWithSkips(optional.get(key), trail);
+            }
+        }
+
+        private void addPartialMatch(RecursiveDictionary<T> node, int trail){
+            // with optional tokens, the same node can be reached on several ways.
+            int previous = -1;
+            if (this.removeDuplicates){
+                Integer last = this.lastByNode.get(node);
+                if (last!=null){
+                    if (this.isDuplicate(last, trail)) return;
+                    previous = last;
+                }
+            }
+            if (this.nextSize==this.nextNodes.length){
+                int length = this.nextSize*2;
+                this.nextNodes = Arrays.copyOf(this.nextNodes, length);
+                this.nextStarts = Arrays.copyOf(this.nextStarts, length);
+                this.nextTrails = Arrays.copyOf(this.nextTrails, length);
+            }
+            if (this.removeDuplicates){
+                if (this.nextSize>=this.previousByNode.length){
+                    this.previousByNode = Arrays.copyOf(this.previousByNode, this.nextNodes.length);
+                }
+                this.previousByNode[this.nextSize] = previous;
+                this.lastByNode.put(node, this.nextSize);
+            }
+            this.nextNodes[this.nextSize] = node;
+            this.nextStarts[this.nextSize] = this.currentStart;
+            this.nextTrails[this.nextSize] = trail;
+            this.nextSize++;
+            if (node.hasMeanings()){
+                this.candidates.add(node, this.currentStart, this.position, trail);
+            }
+        }
+
+        /**
+         * @param last The last partial match after the current word that ends in the same node.
+         */
+        private boolean isDuplicate(int last, int trail){
+            for (int i=last; i!=-1; i=this.previousByNode[i]){
+                if (this.nextStarts[i]==this.currentStart && this.sameTrail(this.nextTrails[i], trail)){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void clearLastByNode(){
+            if (this.lastByNode==null || this.lastByNode.isEmpty()) return;
+            for (int i=0; i<this.nextSize; i++){
+                this.lastByNode.remove(this.nextNodes[i]);
+            }
+        }
+
+        private boolean sameTrail(int a, int b){
+            while (a!=b){
+                if (a==-1 || b==-1) return false;
+                if (!this.trailSurfaces[a].equals(this.trailSurfaces[b])) return false;
+                if (!this.trailPatterns[a].equals(this.trailPatterns[b])) return false;
+                a = this.trailParents[a];
+                b = this.trailParents[b];
+            }
+            return true;
+        }
+
+        /**
+         * @return The matched surfaces and patterns of the partial match ending in the given trail entry.
+         */
+        private KeyValuePairList<String,String> getTrailMatches(int trail){
+            int length = 0;
+            for (int t=trail; t!=-1; t=this.trailParents[t]) length++;
+            List<KeyValuePair<String,String>> pairs = new ArrayList<>(Collections.nCopies(length, null));
+            for (int t=trail; t!=-1; t=this.trailParents[t]){
+                pairs.set(--length, new KeyValuePair<>(this.trailSurfaces[t], this.trailPatterns[t]));
+            }
+            KeyValuePairList<String,String> matches = new KeyValuePairList<>();
+            matches.addAll(pairs);
+            return matches;
+        }
+    }
 
+    // generic arrays cannot be created directly; the arrays only ever hold nodes of the annotator's dictionary.
+    @SuppressWarnings("unchecked")
+    private static <T> RecursiveDictionary<T>[] newArray(int length){
+        return (RecursiveDictionary<T>[])new RecursiveDictionary<?>[length];
     }
 
 }
@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.annotators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects dictionary matches together with the positions of their first and last word, so that overlapping matches
+ * can be resolved according to a MatchPolicy before annotations are created for them.
+ * Each match can carry an additional int, e.g. a reference to further data about the match.
+ * The arrays are kept when clear() is called, so that one instance can be reused for many sentences.
+ * @param <C> The type of the collected matches.
+ */
+class SpanCandidates<C> {
+
+    private ArrayList<C> candidates = new ArrayList<>(16);
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] refs = new int[16];
+    private int size = 0;
+
+    public void add(C candidate, int start, int end){
+        this.add(candidate, start, end, 0);
+    }
+
+    public void add(C candidate, int start, int end, int ref){
+        if (this.size==this.starts.length){
+            this.starts = Arrays.copyOf(this.starts, this.size*2);
+            this.ends = Arrays.copyOf(this.ends, this.size*2);
+            this.refs = Arrays.copyOf(this.refs, this.size*2);
+        }
+        this.candidates.add(candidate);
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.refs[this.size] = ref;
+        this.size++;
+    }
+
+    public void clear(){
+        this.candidates.clear();
+        this.size = 0;
+    }
+
+    public int size(){
+        return this.size;
+    }
+
+    public C get(int i){
+        return this.candidates.get(i);
+    }
+
+    public int getStart(int i){
+        return this.starts[i];
+    }
+
+    public int getEnd(int i){
+        return this.ends[i];
+    }
+
+    public int getRef(int i){
+        return this.refs[i];
+    }
+
+    /**
+     * @return For each candidate, in the order in which they were added, whether it is selected by the policy.
+     */
+    public boolean[] select(MatchPolicy policy){
+        boolean[] selected = new boolean[this.size];
+        if (policy==MatchPolicy.ALL){
+            Arrays.fill(selected, true);
+            return selected;
+        }
+        Integer[] order = new Integer[this.size];
+        for (int i=0; i<this.size; i++) order[i] = i;
+        if (policy==MatchPolicy.LEFTMOST_LONGEST){
+            Arrays.sort(order, (a, b) -> this.starts[a]!=this.starts[b]
+                    ? Integer.compare(this.starts[a], this.starts[b])
+                    : Integer.compare(this.ends[b], this.ends[a]));
+            int lastEnd = -1;
+            int chosen = -1;
+            for (int i : order){
+                if (chosen!=-1 && this.starts[i]==this.starts[chosen] && this.ends[i]==this.ends[chosen]){
+                    selected[i] = true;
+                }else if (this.starts[i]>lastEnd){
+                    selected[i] = true;
+                    chosen = i;
+                    lastEnd = this.ends[i];
+                }
+            }
+        }else{
+            Arrays.sort(order, (a, b) -> {
+                int lengthA = this.ends[a] - this.starts[a];
+                int lengthB = this.ends[b] - this.starts[b];
+                if (lengthA!=lengthB) return Integer.compare(lengthB, lengthA);
+                return Integer.compare(this.starts[a], this.starts[b]);
+            });
+            // chosen spans, from start to end position.
+            TreeMap<Integer,Integer> chosenSpans = new TreeMap<>();
+            int chosen = -1;
+            for (int i : order){
+                if (chosen!=-1 && this.starts[i]==this.starts[chosen] && this.ends[i]==this.ends[chosen]){
+                    selected[i] = true;
+                    continue;
+                }
+                Map.Entry<Integer,Integer> before = chosenSpans.floorEntry(this.ends[i]);
+                if (before!=null && before.getValue()>=this.starts[i]) continue;
+                selected[i] = true;
+                chosen = i;
+                chosenSpans.put(this.starts[i], this.ends[i]);
+            }
+        }
+        return selected;
+    }
+}
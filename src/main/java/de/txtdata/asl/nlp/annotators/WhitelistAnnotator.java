@@ -22,7 +22,12 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import de.txtdata.asl.nlp.annotations.Annotation;
 import de.txtdata.asl.nlp.models.DictionaryEntry;
@@ -30,14 +35,26 @@ import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.Span;
 import de.txtdata.asl.nlp.models.TextUnit;
 import de.txtdata.asl.nlp.models.Word;
+import de.txtdata.asl.nlp.tools.DictionarySnapshot;
+import de.txtdata.asl.util.dataStructures.ITokenAutomaton;
 import de.txtdata.asl.util.dataStructures.RecursiveDictionary;
+import de.txtdata.asl.util.dataStructures.TokenAutomaton;
+import de.txtdata.asl.util.dataStructures.TokenSymbols;
+import de.txtdata.asl.util.files.DirectoryWatcher;
 import de.txtdata.asl.util.files.ResourceFile;
+import de.txtdata.asl.util.misc.AslException;
 
 /**
  * Annotator that reads dictionary files contained in a specified directory, matches input texts against the
  * dictionary entries and creates annotations for any text that matches them.
  * If getMatches() is not overridden, the equality between input text and dictionary entries is computed via
- * strict string equality.
+ * strict string equality, optionally ignoring case and diacritics. Otherwise, every word is matched by calling getMatches(), and compiled matching is not
+ * available.
+ * After calling compile(), matching is done with a TokenAutomaton instead, which finds all entries in one linear pass
+ * over the words of a TextUnit and creates the same annotations.
+ * The compiled dictionary can be written to a binary snapshot file with writeSnapshot(), from which an annotator can
+ * later be created without parsing any dictionary files.
+ * The dictionaries can be re-read from dictionariesLocation while the annotator is in use, see reload().
  */
 public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryEntry> {
 
@@ -49,7 +66,13 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
 
     private   String  defaultType        = "NULL_TYPE";
     protected boolean ignoreCase         = true;
+    protected boolean ignoreAccents      = false;
+    protected boolean compiledMatching   = false;
+    protected int     loadingThreads     = 1;
 
+    private volatile ITokenAutomaton<DictionaryEntry> automaton = null;
+    private final Object reloadLock = new Object();
+    private DirectoryWatcher watcher = null;
 
 
     protected WhitelistAnnotator(){}
@@ -63,15 +86,30 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
     }
 
     public WhitelistAnnotator(Language lang, String dictionariesLocation, boolean ignoreCase){
+        this(lang, dictionariesLocation, ignoreCase, 1);
+    }
+
+    /**
+     * @param loadingThreads If larger than 1 and dictionariesLocation is a directory, the dictionary files are parsed
+     *                       in parallel on this many threads. The result is the same as when reading the files in order
+     *                       of their paths, independent of the order in which the file system lists them.
+     */
+    public WhitelistAnnotator(Language lang, String dictionariesLocation, boolean ignoreCase, int loadingThreads){
+        this(lang, dictionariesLocation, ignoreCase, false, loadingThreads);
+    }
+
+    /**
+     * @param ignoreAccents If true, dictionary entries and words are compared without diacritics, e.g. "Cafe" matches
+     *                      the entry "café", see Word.getFoldedSurface(). This implies ignoreCase.
+     */
+    public WhitelistAnnotator(Language lang, String dictionariesLocation, boolean ignoreCase, boolean ignoreAccents,
+                              int loadingThreads){
         super(lang);
         this.dictionariesLocation = dictionariesLocation;
-        this.ignoreCase = ignoreCase;
-        File dir = new File(this.dictionariesLocation);
-        if (dir.isDirectory()){
-            this.recursiveDirectoryReader("");
-        }else{
-            this.readFile(this.dictionariesLocation);
-        }
+        this.ignoreCase = ignoreCase || ignoreAccents;
+        this.ignoreAccents = ignoreAccents;
+        this.loadingThreads = loadingThreads;
+        this.loadDictionaries(this.completeDictionary);
     }
 
     public WhitelistAnnotator(Language language, RecursiveDictionary<DictionaryEntry> completeDictionary, boolean ignoreCase){
@@ -80,12 +118,27 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
         this.ignoreCase = ignoreCase;
     }
 
+    /**
+     * Creates an annotator that matches against a memory-mapped dictionary snapshot.
+     * Such an annotator always uses compiled matching, and no entries can be added to it.
+     */
+    public WhitelistAnnotator(Language language, DictionarySnapshot snapshot){
+        this.language = language;
+        this.ignoreCase = snapshot.isIgnoreCase();
+        this.ignoreAccents = snapshot.isIgnoreAccents();
+        this.compiledMatching = true;
+        this.automaton = snapshot;
+    }
+
     public void addToDictionary(List<Word> words, String type, String tag){
+        if (this.automaton instanceof DictionarySnapshot){
+            throw new UnsupportedOperationException("Dictionary snapshots are read-only.");
+        }
         String surface = "";
         List<String> parts = new ArrayList<>();
         for (Word word : words){
             surface = surface + word.getSurface()+" ";
-            parts.add(word.getSurface());
+            parts.add(this.ignoreAccents ? Word.foldAccents(word.getSurface()) : word.getSurface());
         }
         surface = surface.trim();
         String[] array = parts.stream().toArray(n -> new String[n]);
@@ -93,12 +146,175 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
         entry.tags = new ArrayList<>();
         entry.tags.add(tag);
         this.completeDictionary.add(array, entry);
+        this.automaton = null;
+    }
+
+    /**
+     * @return true if compile() and writeSnapshot() can be used, i.e. if words are matched against the dictionary by
+     * looking up their (lower-cased) surface. Subclasses that match differently return false.
+     */
+    public boolean supportsCompilation(){
+        return this.useIndexedMatching();
+    }
+
+    /**
+     * Whether collectMatches() may look up words in the dictionary directly, e.g. by their token IDs, instead of
+     * calling getMatches() for each dictionary node. Subclasses that override getMatches() to change which words match
+     * must override this method to return false; then compiled matching is not supported either.
+     */
+    protected boolean useIndexedMatching(){
+        return true;
+    }
+
+    /**
+     * Switches this annotator to compiled matching: the dictionary is turned into a TokenAutomaton, so that each
+     * TextUnit is matched in one linear pass, regardless of how many partial matches are active.
+     * Entries added later via addToDictionary() cause the automaton to be rebuilt before the next annotation.
+     * @throws UnsupportedOperationException If supportsCompilation() returns false.
+     */
+    public void compile(){
+        this.checkCompilation();
+        this.compiledMatching = true;
+        this.automaton = new TokenAutomaton<>(this.completeDictionary);
+    }
+
+    /**
+     * Compiles the dictionary and writes it to a binary snapshot file, see DictionarySnapshot.
+     * @throws UnsupportedOperationException If supportsCompilation() returns false.
+     */
+    public void writeSnapshot(String fileName){
+        this.checkCompilation();
+        DictionarySnapshot.write(new TokenAutomaton<>(this.completeDictionary), this.ignoreCase, this.ignoreAccents,
+                fileName);
+    }
+
+    private void checkCompilation(){
+        if (!this.supportsCompilation()){
+            throw new UnsupportedOperationException(this.getClass().getName() + " does not support compiled matching.");
+        }
+    }
+
+    /**
+     * Re-reads all dictionaries from dictionariesLocation into a new dictionary and then replaces the current one.
+     * Annotation continues with the old dictionary while the new one is built (and frozen and compiled, if the old one
+     * was), and sentences that are already being annotated finish with the old dictionary.
+     * Entries that were added via addToDictionary() are not retained.
+     */
+    public void reload(){
+        if (this.dictionariesLocation==null || this.automaton instanceof DictionarySnapshot){
+            throw new UnsupportedOperationException("This annotator was not created from a dictionaries location.");
+        }
+        synchronized (this.reloadLock){
+            RecursiveDictionary<DictionaryEntry> dictionary = new RecursiveDictionary<>();
+            this.loadDictionaries(dictionary);
+            if (this.completeDictionary.isFrozen()) dictionary.freeze();
+            ITokenAutomaton<DictionaryEntry> newAutomaton = null;
+            if (this.compiledMatching) newAutomaton = new TokenAutomaton<>(dictionary);
+            this.replaceDictionary(dictionary, newAutomaton);
+        }
+    }
+
+    /**
+     * Publishes a reloaded dictionary. Subclasses that keep data derived from the dictionary can override this method
+     * to replace that data as well.
+     */
+    protected void replaceDictionary(RecursiveDictionary<DictionaryEntry> dictionary, ITokenAutomaton<DictionaryEntry> automaton){
+        synchronized (this){
+            this.completeDictionary = dictionary;
+            this.automaton = automaton;
+        }
+    }
+
+    /**
+     * Starts watching dictionariesLocation and calls reload() in the background whenever files in it change.
+     * If a reload fails, e.g. because a file is only partially written, the previous dictionary stays in use.
+     */
+    public synchronized void startWatching(){
+        if (this.watcher!=null) return;
+        if (this.dictionariesLocation==null){
+            throw new UnsupportedOperationException("This annotator was not created from a dictionaries location.");
+        }
+        this.watcher = new DirectoryWatcher(this.dictionariesLocation, this::reload);
+        this.watcher.start();
+    }
+
+    public synchronized void stopWatching(){
+        if (this.watcher==null) return;
+        this.watcher.stop();
+        this.watcher = null;
+    }
+
+    @Override
+    public void annotate(TextUnit sentence){
+        if (this.compiledMatching){
+            this.annotateCompiled(sentence, this.getAutomaton());
+        }else{
+            super.annotate(sentence);
+        }
+    }
+
+    protected void annotateCompiled(TextUnit sentence, ITokenAutomaton<DictionaryEntry> automaton){
+        MatcherState matcherState = this.acquireMatcherState();
+        try{
+            // the candidates carry the automaton state of the match instead of a dictionary node.
+            SpanCandidates<RecursiveDictionary<DictionaryEntry>> candidates = matcherState.candidates;
+            List<Word> words = sentence.getWords();
+            if (matcherState.positions.length<words.size()) matcherState.positions = new int[words.size()];
+            int[] positions = matcherState.positions;
+            int count = 0;
+            int state = ITokenAutomaton.ROOT;
+            TokenSymbols symbols = automaton.getTokenSymbols();
+            for (int i=0; words.size()>i ;i++){
+                Word word = words.get(i);
+                if (word.getSurface().trim().equals("")) continue; // ignore whitespace, if present
+                positions[count++] = i;
+                int tokenId;
+                if (symbols!=null){
+                    tokenId = this.getTokenId(word, symbols);
+                }else{
+                    tokenId = automaton.getTokenId(this.getLookupSurface(word));
+                }
+                state = automaton.next(state, tokenId);
+                int found = automaton.getOutput(state);
+                while (found!=ITokenAutomaton.NONE){
+                    int start = positions[count - automaton.getDepth(found)];
+                    candidates.add(null, start, i, found);
+                    found = automaton.getOutput(automaton.getFailure(found));
+                }
+            }
+            if (candidates.size()==0) return;
+            List<Annotation> results = new ArrayList<>();
+            boolean[] selected = candidates.select(this.matchPolicy);
+            for (int i=0; i<candidates.size(); i++){
+                if (!selected[i]) continue;
+                List<DictionaryEntry> meanings = automaton.getMeanings(candidates.getRef(i));
+                results.addAll(this.createAnnotations(meanings, sentence, candidates.getStart(i), candidates.getEnd(i)));
+            }
+            sentence.addAnnotations(results);
+        }finally{
+            this.releaseMatcherState(matcherState);
+        }
+    }
+
+    private ITokenAutomaton<DictionaryEntry> getAutomaton(){
+        ITokenAutomaton<DictionaryEntry> result = this.automaton;
+        if (result!=null) return result;
+        synchronized (this){
+            if (this.automaton==null){
+                this.automaton = new TokenAutomaton<>(this.completeDictionary);
+            }
+            return this.automaton;
+        }
     }
 
     @Override
     protected List<Annotation> createAnnotations(RecursiveDictionaryMatch<DictionaryEntry> match, TextUnit textPiece, int start, int end){
+        return this.createAnnotations(match.dictionary.getMeanings(), textPiece, start, end);
+    }
+
+    protected List<Annotation> createAnnotations(List<DictionaryEntry> entries, TextUnit textPiece, int start, int end){
         List<Annotation> results = new ArrayList<>();
-        for (DictionaryEntry entry : match.dictionary.meanings){
+        for (DictionaryEntry entry : entries){
             int startPos = textPiece.getWords().get(start).getStarts();
             int endPos = textPiece.getWords().get(end).getEnds();
             String surface = textPiece.getSurfaceText(startPos, endPos);
@@ -109,18 +325,63 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
         return results;
     }
 
+    @Override
+    protected void collectMatches(Word word, RecursiveDictionary<DictionaryEntry> dictionary, MatchCollector collector){
+        if (!this.useIndexedMatching()){
+            this.collectFromGetMatches(word, dictionary, collector);
+            return;
+        }
+        String surface = this.getLookupSurface(word);
+        RecursiveDictionary<DictionaryEntry> result;
+        if (dictionary.isFrozen()){
+            result = dictionary.get(this.getTokenId(word, dictionary.getSymbols()));
+        }else{
+            result = dictionary.get(surface);
+        }
+        if (result!=null) collector.add(result, word.getSurface(), surface);
+    }
+
     @Override
     public List<RecursiveDictionaryMatch<DictionaryEntry>> getMatches(Word word, RecursiveDictionary<DictionaryEntry> dictionary){
         List<RecursiveDictionaryMatch<DictionaryEntry>> results = new ArrayList<>();
-        String surface = word.getSurface();
-        if (this.ignoreCase)  surface = surface.toLowerCase();
-        RecursiveDictionary<DictionaryEntry> result = dictionary.map.get(surface);
-        RecursiveDictionaryMatch dm = new RecursiveDictionaryMatch(result, word.getSurface(), surface);
-        if (result!=null) results.add(dm);
+        String surface = this.getLookupSurface(word);
+        RecursiveDictionary<DictionaryEntry> result = dictionary.get(surface);
+        if (result!=null) results.add(new RecursiveDictionaryMatch<>(result, word.getSurface(), surface));
         return results;
     }
 
+    /**
+     * @return The form of the word's surface that is looked up in the dictionary.
+     */
+    protected String getLookupSurface(Word word){
+        if (this.ignoreAccents) return word.getFoldedSurface();
+        return this.ignoreCase ? word.getLowerCaseSurface() : word.getSurface();
+    }
+
+    private int getTokenId(Word word, TokenSymbols symbols){
+        if (this.ignoreAccents) return word.getFoldedTokenId(symbols);
+        return word.getTokenId(symbols, this.ignoreCase);
+    }
+
+    /**
+     * Reads the file or all files below the directory at dictionariesLocation into the given dictionary.
+     */
+    protected void loadDictionaries(RecursiveDictionary<DictionaryEntry> dictionary){
+        File dir = new File(this.dictionariesLocation);
+        if (dir.isDirectory() && this.loadingThreads>1){
+            this.parallelDirectoryReader(this.dictionariesLocation, dictionary);
+        }else if (dir.isDirectory()){
+            this.recursiveDirectoryReader(this.dictionariesLocation, dictionary);
+        }else{
+            this.readFile(this.dictionariesLocation, dictionary);
+        }
+    }
+
     protected void recursiveDirectoryReader(String directory){
+        this.recursiveDirectoryReader(directory, this.completeDictionary);
+    }
+
+    protected void recursiveDirectoryReader(String directory, RecursiveDictionary<DictionaryEntry> dictionary){
         File location = new File(directory);
         if (location.isDirectory()){
             String[] items = location.list();
@@ -128,9 +389,9 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
                 Path subItemPath = Paths.get(location.getPath(), item);
                 
                 if (!subItemPath.toFile().isDirectory()){
-                    this.readFile(subItemPath.toString());
+                    this.readFile(subItemPath.toString(), dictionary);
                 }else{
-                    this.recursiveDirectoryReader(subItemPath.toString());
+                    this.recursiveDirectoryReader(subItemPath.toString(), dictionary);
                 }
             }
         }else{
@@ -138,7 +399,64 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
         }
     }
 
+    /**
+     * Parses all files below the directory in parallel, each into its own partial dictionary, and then merges the
+     * partial dictionaries into the given dictionary in order of the file paths.
+     */
+    protected void parallelDirectoryReader(String directory){
+        this.parallelDirectoryReader(directory, this.completeDictionary);
+    }
+
+    protected void parallelDirectoryReader(String directory, RecursiveDictionary<DictionaryEntry> dictionary){
+        List<String> fileNames = new ArrayList<>();
+        this.collectFiles(new File(directory), fileNames);
+        Collections.sort(fileNames);
+        ExecutorService executor = Executors.newFixedThreadPool(this.loadingThreads);
+        try{
+            List<Future<RecursiveDictionary<DictionaryEntry>>> partialDictionaries = new ArrayList<>();
+            for (String fileName : fileNames){
+                partialDictionaries.add(executor.submit(() -> {
+                    RecursiveDictionary<DictionaryEntry> partialDictionary = new RecursiveDictionary<>();
+                    this.readFile(fileName, partialDictionary);
+                    return partialDictionary;
+                }));
+            }
+            for (Future<RecursiveDictionary<DictionaryEntry>> partialDictionary : partialDictionaries){
+                dictionary.addAll(partialDictionary.get());
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AslException(e);
+        }catch(ExecutionException e){
+            throw new AslException(e.getCause());
+        }finally{
+            executor.shutdownNow();
+        }
+    }
+
+    private void collectFiles(File location, List<String> fileNames){
+        String[] items = location.list();
+        if (items==null) return;
+        for (String item : items){
+            File subItem = Paths.get(location.getPath(), item).toFile();
+            if (subItem.isDirectory()){
+                this.collectFiles(subItem, fileNames);
+            }else{
+                fileNames.add(subItem.getPath());
+            }
+        }
+    }
+
     protected void readFile(String fileName){
+        this.readFile(fileName, this.completeDictionary);
+    }
+
+    /**
+     * Reads one dictionary file. Type and tag directives only apply to the file in which they appear.
+     * @param fileName The file to read.
+     * @param dictionary The dictionary to which the entries are added.
+     */
+    protected void readFile(String fileName, RecursiveDictionary<DictionaryEntry> dictionary){
         ResourceFile resourceFile = new ResourceFile(fileName, false, "//");
         String type = defaultType;
         List<String> tags = new ArrayList<>();
@@ -173,8 +491,8 @@ public class WhitelistAnnotator extends RecursiveDictionaryAnnotator<DictionaryE
                 entry.tags = new ArrayList<>();
                 entry.tags.addAll(tags);
                 entry.tags.addAll(additionalTags);
-                parts = line.split(" ");
-                this.completeDictionary.add(parts, entry);
+                parts = (this.ignoreAccents ? Word.foldAccents(line) : line).split(" ");
+                dictionary.add(parts, entry);
             }
         }
     }
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.models;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM-wide registry of morphological features such as "nom" or "sg". Each registered feature gets one bit of a long,
+ * so that checking whether a word has all features required by a pattern is a single bitwise AND.
+ * Features are registered by the patterns that require them; the features of words are only looked up. At most
+ * MAX_FEATURES features can be registered; patterns with other features have to compare strings instead.
+ * Morph strings of words are interned as Analysis objects, so that words with the same analysis share one string,
+ * its lowercase form and its features.
+ */
+public class MorphFeatures {
+
+    public static final int UNKNOWN = -1;
+    public static final int MAX_FEATURES = 64;
+    private static final int MAX_ANALYSES = 100000;
+    private static final String SEPARATOR = "\\|"; // string is a regex
+
+    private static final ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<>();
+    private static volatile int size = 0;
+    private static final ConcurrentHashMap<String,Analysis> analyses = new ConcurrentHashMap<>();
+
+    private MorphFeatures(){}
+
+    /**
+     * @param feature A lowercase feature.
+     * @return The bit of the feature, which is newly assigned if the feature has not been seen before, or UNKNOWN if
+     * all bits are taken.
+     */
+    public static int register(String feature){
+        Integer id = ids.get(feature);
+        if (id!=null) return id;
+        synchronized (MorphFeatures.class){
+            id = ids.get(feature);
+            if (id!=null) return id;
+            if (size==MAX_FEATURES) return UNKNOWN;
+            ids.put(feature, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @return The bit of the lowercase feature, or UNKNOWN if it has never been registered.
+     */
+    public static int lookUp(String feature){
+        Integer id = ids.get(feature);
+        if (id==null) return UNKNOWN;
+        return id;
+    }
+
+    /**
+     * @return The number of registered features.
+     */
+    public static int size(){
+        return size;
+    }
+
+    /**
+     * @param features Lowercase features.
+     * @return The mask with the bits of all given features that are registered.
+     */
+    public static long getMask(String[] features){
+        long mask = 0;
+        for (String feature : features){
+            int id = lookUp(feature);
+            if (id!=UNKNOWN) mask |= 1L << id;
+        }
+        return mask;
+    }
+
+    /**
+     * @param morph A morph string, e.g. "Nom|Sg|Masc".
+     * @return The shared analysis of the string. If too many different strings have been seen, a new analysis is
+     * returned that is not shared.
+     */
+    public static Analysis analyze(String morph){
+        Analysis analysis = analyses.get(morph);
+        if (analysis!=null) return analysis;
+        analysis = new Analysis(morph);
+        if (analyses.size()>=MAX_ANALYSES) return analysis;
+        Analysis existing = analyses.putIfAbsent(morph, analysis);
+        return existing==null ? analysis : existing;
+    }
+
+    /**
+     * A morph string, split into its lowercase features.
+     */
+    public static class Analysis {
+
+        private final String morph;
+        private final String lowerCase;
+        private final String[] features;
+        private volatile Mask mask;
+
+        private Analysis(String morph){
+            this.morph = morph;
+            this.lowerCase = morph.toLowerCase();
+            this.features = this.lowerCase.split(SEPARATOR);
+        }
+
+        public String getMorph(){
+            return this.morph;
+        }
+
+        public String getLowerCase(){
+            return this.lowerCase;
+        }
+
+        public String[] getFeatures(){
+            return this.features;
+        }
+
+        public boolean hasFeature(String feature){
+            for (String f : this.features){
+                if (f.equals(feature)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return The bits of all features of this analysis that are registered. Recomputed when features have been
+         * registered since the last call.
+         */
+        public long getMask(){
+            Mask mask = this.mask;
+            int registered = size;
+            if (mask==null || mask.registered!=registered){
+                mask = new Mask(MorphFeatures.getMask(this.features), registered);
+                this.mask = mask;
+            }
+            return mask.bits;
+        }
+
+        public String toString(){
+            return this.morph;
+        }
+    }
+
+    private static class Mask {
+
+        private final long bits;
+        private final int registered;
+
+        private Mask(long bits, int registered){
+            this.bits = bits;
+            this.registered = registered;
+        }
+    }
+}
@@ -19,16 +19,21 @@
 package de.txtdata.asl.nlp.models;
 
 import de.txtdata.asl.util.dataStructures.KeyValuePairList;
+import de.txtdata.asl.util.dataStructures.TokenSymbols;
 import de.txtdata.asl.util.misc.PrettyString;
 
 import java.io.Serializable;
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Representation for a word.
  * Note that this class has fields for start and end positions of the word in a text, however these are not used when
  * computing equality. The only requirement for two words to be equal is that their surfaces are equal.
+ * Normalized forms of the surface (lowercase, accent-folded, token ID) and lowercase forms of root, POS and morph are
+ * computed on first use and cached, so that annotators can compare them many times without normalizing them again.
  */
 public class Word extends Span implements Serializable{
 
@@ -43,6 +48,8 @@ public class Word extends Span implements Serializable{
 
     private static String PUNCTUATIONS =  ",.:;-!?#/\"'’«»„“()[]+-•";
 
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
     private String root;
     private String pos;
     private String morph;
@@ -50,6 +57,17 @@ public class Word extends Span implements Serializable{
     private List<String> types = new ArrayList<>();
     private KeyValuePairList<String, Object> features = new KeyValuePairList<>();
 
+    // cached normalized forms, reset when the underlying value changes.
+    private transient String lowerCaseSurface;
+    private transient String foldedSurface;
+    private transient String lowerCaseRoot;
+    private transient String lowerCasePOS;
+    private transient MorphFeatures.Analysis morphAnalysis;
+    // token IDs of the (lowercase, folded) surface in the symbol table in which they were looked up last.
+    private transient TokenId surfaceId;
+    private transient TokenId lowerCaseSurfaceId;
+    private transient TokenId foldedSurfaceId;
+
 
     public Word(String surface){
         super(surface,0,0);
@@ -72,12 +90,93 @@ public class Word extends Span implements Serializable{
     }
 
 
+    @Override
+    public void setSurface(String surface) {
+        super.setSurface(surface);
+        this.lowerCaseSurface = null;
+        this.foldedSurface = null;
+        this.surfaceId = null;
+        this.lowerCaseSurfaceId = null;
+        this.foldedSurfaceId = null;
+    }
+
+    /**
+     * @return The surface in lowercase.
+     */
+    public String getLowerCaseSurface() {
+        String result = this.lowerCaseSurface;
+        if (result==null && this.getSurface()!=null){
+            result = this.getSurface().toLowerCase();
+            this.lowerCaseSurface = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return The surface in lowercase and without diacritics, e.g. "cafe" for "Café", see foldAccents().
+     */
+    public String getFoldedSurface() {
+        String result = this.foldedSurface;
+        if (result==null && this.getSurface()!=null){
+            result = foldAccents(this.getLowerCaseSurface());
+            this.foldedSurface = result;
+        }
+        return result;
+    }
+
+    /**
+     * @param symbols The symbol table, e.g. that of a frozen RecursiveDictionary.
+     * @param lowerCase Whether the ID of the lowercase surface should be returned.
+     * @return The ID of the (lowercase) surface in the symbol table, or TokenSymbols.UNKNOWN.
+     */
+    public int getTokenId(TokenSymbols symbols, boolean lowerCase) {
+        if (lowerCase){
+            this.lowerCaseSurfaceId = lookUp(symbols, this.lowerCaseSurfaceId, this.getLowerCaseSurface());
+            return this.lowerCaseSurfaceId.id;
+        }
+        this.surfaceId = lookUp(symbols, this.surfaceId, this.getSurface());
+        return this.surfaceId.id;
+    }
+
+    /**
+     * @return The ID of the folded surface (see getFoldedSurface()) in the symbol table, or TokenSymbols.UNKNOWN.
+     */
+    public int getFoldedTokenId(TokenSymbols symbols) {
+        this.foldedSurfaceId = lookUp(symbols, this.foldedSurfaceId, this.getFoldedSurface());
+        return this.foldedSurfaceId.id;
+    }
+
+    private static TokenId lookUp(TokenSymbols symbols, TokenId cached, String token){
+        if (cached!=null && cached.isValidFor(symbols)) return cached;
+        int size = symbols.size();
+        int id = token==null ? TokenSymbols.UNKNOWN : symbols.lookUp(token);
+        return new TokenId(symbols, id, size);
+    }
+
+    /**
+     * Removes diacritics by decomposing the text (Unicode NFD) and dropping all combining marks, e.g. "Ça" becomes
+     * "Ca". Case is not changed.
+     */
+    public static String foldAccents(String text) {
+        // characters below U+00C0 have no canonical decomposition.
+        int i = 0;
+        while (i<text.length() && text.charAt(i)<'\u00C0') i++;
+        if (i==text.length()) return text;
+        return COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+    }
+
     public String getRoot() {
         return root;
     }
 
     public void setRoot(String root) {
         this.root = root;
+        this.lowerCaseRoot = null;
+    }
+
+    public String getLowerCaseRoot() {
+        if (this.lowerCaseRoot==null && this.root!=null) this.lowerCaseRoot = this.root.toLowerCase();
+        return this.lowerCaseRoot;
     }
 
     public String getPOS() {
@@ -86,6 +185,12 @@ public class Word extends Span implements Serializable{
 
     public void setPOS(String pos) {
         this.pos = pos;
+        this.lowerCasePOS = null;
+    }
+
+    public String getLowerCasePOS() {
+        if (this.lowerCasePOS==null && this.pos!=null) this.lowerCasePOS = this.pos.toLowerCase();
+        return this.lowerCasePOS;
     }
 
     public String getMorph() {
@@ -93,7 +198,30 @@ public class Word extends Span implements Serializable{
     }
 
     public void setMorph(String morph) {
-        this.morph = morph;
+        this.morphAnalysis = morph==null ? null : MorphFeatures.analyze(morph);
+        this.morph = morph==null ? null : this.morphAnalysis.getMorph();
+    }
+
+    public String getLowerCaseMorph() {
+        MorphFeatures.Analysis analysis = this.getMorphAnalysis();
+        return analysis==null ? null : analysis.getLowerCase();
+    }
+
+    /**
+     * @return The morph string split into its lowercase features, shared with all words with the same morph string,
+     * or null if the word has no morph.
+     */
+    public MorphFeatures.Analysis getMorphAnalysis() {
+        if (this.morphAnalysis==null && this.morph!=null) this.morphAnalysis = MorphFeatures.analyze(this.morph);
+        return this.morphAnalysis;
+    }
+
+    /**
+     * @return The bits of the morphological features of this word, see MorphFeatures.
+     */
+    public long getMorphMask() {
+        MorphFeatures.Analysis analysis = this.getMorphAnalysis();
+        return analysis==null ? 0 : analysis.getMask();
     }
 
     public List<String> getTypes() {
@@ -200,4 +328,23 @@ public class Word extends Span implements Serializable{
         }
         return sb.toString();
     }
+
+    // an immutable pair, so that the ID is never read together with a different table.
+    private static class TokenId {
+
+        private final TokenSymbols symbols;
+        private final int id;
+        // the number of symbols at the time of the look-up, since an unknown token may be added later.
+        private final int size;
+
+        private TokenId(TokenSymbols symbols, int id, int size){
+            this.symbols = symbols;
+            this.id = id;
+            this.size = size;
+        }
+
+        private boolean isValidFor(TokenSymbols symbols){
+            return this.symbols==symbols && (this.id!=TokenSymbols.UNKNOWN || this.size==symbols.size());
+        }
+    }
 }
@@ -21,6 +21,8 @@ package de.txtdata.asl.nlp.models;
 import de.txtdata.asl.nlp.tools.FrequentWordList;
 import de.txtdata.asl.nlp.tools.WordList;
 import de.txtdata.asl.nlp.tools.AbstractStemmer;
+import de.txtdata.asl.nlp.tools.CharClassifier;
+import de.txtdata.asl.nlp.tools.ICharClassifier;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,6 +38,10 @@ public class WordFactory {
 
     private Language lang;
 
+    private static final int ALL_PUNCTUATION = 1;
+    private static final int ALL_BLANK       = 2;
+    private static final int ANY_DIGIT       = 4;
+
     public WordFactory(Language lang){
         this.lang = lang;
     }
@@ -109,6 +115,7 @@ public class WordFactory {
                 word.addType(Word.PUNCTUATION);
             }
         }
+        int charClasses = getCharClasses(surface);
         if (stopWords!=null && stopWords.isOnList(surface)){
             word.addType(Word.STOPWORD);
         }
@@ -116,22 +123,25 @@ public class WordFactory {
             word.addType(Word.UPPERCASE);
         }else if (firstLetterIsLowerCase(surface)) {
             word.addType(Word.LOWERCASE);
-        }else if (this.isPunctuation(surface)) {
+        }else if ((charClasses & ALL_PUNCTUATION)!=0) {
             if (!word.getTypes().contains(Word.PUNCTUATION)) {
                 word.addType(Word.PUNCTUATION);
             }
         }
-        if (surface.trim().isEmpty() && !word.isType(Word.WHITESPACE)){
+        if ((charClasses & ALL_BLANK)!=0 && !word.isType(Word.WHITESPACE)){
             word.addType(Word.WHITESPACE);
         }
         if (surface.contains("\t") || surface.contains("\n")){
             word.addType(Word.SEPARATOR);
         }
-        try {
-            Double d = Double.parseDouble(surface);
-            word.addType(Word.NUMBER);
-        }catch(NumberFormatException nfe){
-            // nothing to do
+        // every string that parses as a double contains a digit, "NaN" or "Infinity"; this saves most exceptions.
+        if ((charClasses & ANY_DIGIT)!=0 || surface.contains("NaN") || surface.contains("Infinity")) {
+            try {
+                Double d = Double.parseDouble(surface);
+                word.addType(Word.NUMBER);
+            }catch(NumberFormatException nfe){
+                // nothing to do
+            }
         }
         if (word.isType(Word.WHITESPACE) || word.isType(Word.PUNCTUATION)){
             return word;
@@ -154,16 +164,25 @@ public class WordFactory {
         return word;
     }
 
-    private boolean isPunctuation(String s){
-        if (Word.getPunctuations().contains(s)) return true;
-        if (s.length()==1) return false;
-        String[] parts = s.split("");
-        for (String part : parts){
-            if (!Word.getPunctuations().contains(part)){
-                return false;
-            }
+    /**
+     * Classifies the characters of the surface with the CharClassifier, 64 at a time.
+     * @return ALL_PUNCTUATION if all characters are punctuation (or there are none), ALL_BLANK if all characters are
+     * removed by trim(), and ANY_DIGIT if there is a digit.
+     */
+    private static int getCharClasses(String s){
+        ICharClassifier classifier = CharClassifier.getInstance();
+        char[] chars = s.toCharArray();
+        long[] masks = new long[ICharClassifier.CLASSES];
+        int result = ALL_PUNCTUATION | ALL_BLANK;
+        for (int block=0; block<chars.length; block+=64){
+            int blockEnd = Math.min(chars.length, block+64);
+            long valid = blockEnd-block==64 ? -1L : (1L << (blockEnd-block)) - 1;
+            classifier.classify(chars, block, blockEnd, masks);
+            if (masks[ICharClassifier.PUNCTUATION]!=valid) result &= ~ALL_PUNCTUATION;
+            if (masks[ICharClassifier.BLANK]!=valid) result &= ~ALL_BLANK;
+            if (masks[ICharClassifier.DIGIT]!=0) result |= ANY_DIGIT;
         }
-        return true;
+        return result;
     }
 
     private static boolean firstLetterIsUpperCase(String s){
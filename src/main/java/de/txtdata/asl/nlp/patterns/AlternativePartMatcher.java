@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+/**
+ * Matcher for pattern parts like "(NN|NE)", which match tokens that match any of the alternatives.
+ */
+public class AlternativePartMatcher implements IPartMatcher {
+
+    private String pattern;
+    private IPartMatcher[] alternatives;
+
+    public AlternativePartMatcher(String pattern, IPartMatcher[] alternatives){
+        this.pattern = pattern;
+        this.alternatives = alternatives;
+    }
+
+    public IPartMatcher[] getAlternatives(){
+        return this.alternatives;
+    }
+
+    @Override
+    public boolean matches(PreparedToken token){
+        if (token.getText().equals(this.pattern)) return true;
+        for (IPartMatcher alternative : this.alternatives){
+            if (alternative.matches(token)) return true;
+        }
+        return false;
+    }
+
+    public String toString(){
+        return this.pattern;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import java.util.Arrays;
+
+/**
+ * Simple trie over characters that stores int values, used by PosPatternIndex to find all patterns whose text is a
+ * prefix of a word (or, with reversed texts, a suffix) in one walk over the word.
+ * Children are kept in sorted arrays, so lookups are binary searches.
+ */
+public class CharTrie {
+
+    private static final char[] NO_CHARS = new char[0];
+    private static final CharTrie[] NO_CHILDREN = new CharTrie[0];
+
+    private char[] chars = NO_CHARS;
+    private CharTrie[] children = NO_CHILDREN;
+    private int[] values = null;
+
+    /**
+     * Adds a value for the given text, which is read backwards if reversed is true.
+     */
+    public void add(String text, boolean reversed, int value){
+        CharTrie node = this;
+        for (int i=0; i<text.length(); i++){
+            node = node.getOrAdd(text.charAt(reversed ? text.length()-1-i : i));
+        }
+        if (node.values==null){
+            node.values = new int[]{value};
+        }else if (node.values[node.values.length-1]!=value){
+            node.values = Arrays.copyOf(node.values, node.values.length+1);
+            node.values[node.values.length-1] = value;
+        }
+    }
+
+    /**
+     * @return The child for the given character, or null.
+     */
+    public CharTrie get(char c){
+        int index = Arrays.binarySearch(this.chars, c);
+        if (index<0) return null;
+        return this.children[index];
+    }
+
+    /**
+     * @return The values of texts that end at this node, or null.
+     */
+    public int[] getValues(){
+        return this.values;
+    }
+
+    public boolean isEmpty(){
+        return this.chars.length==0 && this.values==null;
+    }
+
+    private CharTrie getOrAdd(char c){
+        int index = Arrays.binarySearch(this.chars, c);
+        if (index>=0) return this.children[index];
+        index = -index-1;
+        CharTrie child = new CharTrie();
+        char[] chars = new char[this.chars.length+1];
+        CharTrie[] children = new CharTrie[this.children.length+1];
+        System.arraycopy(this.chars, 0, chars, 0, index);
+        System.arraycopy(this.children, 0, children, 0, index);
+        chars[index] = c;
+        children[index] = child;
+        System.arraycopy(this.chars, index, chars, index+1, this.chars.length-index);
+        System.arraycopy(this.children, index, children, index+1, this.children.length-index);
+        this.chars = chars;
+        this.children = children;
+        return child;
+    }
+}
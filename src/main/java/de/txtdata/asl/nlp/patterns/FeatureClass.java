@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.nlp.patterns;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Equivalence class of words for PosPattern matching: the surface and root conditions of the patterns that a word
+ * meets, by their numbers in FeatureClasses, together with its POS and morphological features. All words of a class
+ * match the same patterns, so the result of matching a dictionary node against one of them can be reused for all
+ * others.
+ */
+public class FeatureClass {
+
+    private int[] surfaces;
+    private int[] roots;
+    private String pos;
+    private String morph;
+    private int hash;
+
+    FeatureClass(int[] surfaces, int[] roots, String pos, String morph){
+        this.surfaces = surfaces;
+        this.roots = roots;
+        this.pos = pos;
+        this.morph = morph;
+        this.hash = Objects.hash(Arrays.hashCode(surfaces), Arrays.hashCode(roots), pos, morph);
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if (this==o) return true;
+        if (!(o instanceof FeatureClass)) return false;
+        FeatureClass other = (FeatureClass)o;
+        return this.hash==other.hash && Arrays.equals(this.surfaces, other.surfaces)
+                && Arrays.equals(this.roots, other.roots) && Objects.equals(this.pos, other.pos)
+                && Objects.equals(this.morph, other.morph);
+    }
+
+    @Override
+    public int hashCode(){
+        return this.hash;
+    }
+
+    public String toString(){
+        return Arrays.toString(this.surfaces) + "." + Arrays.toString(this.roots) + "." + this.pos + "." + this.morph;
+    }
+}
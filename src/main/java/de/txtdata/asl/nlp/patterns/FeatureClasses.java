@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.nlp.patterns;
+
+import de.txtdata.asl.nlp.models.MorphFeatures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The alphabet of the lazily built transitions of PosPatternNodes: the distinct surface and root conditions of all
+ * registered patterns, by which words are grouped into FeatureClasses. A word's class holds the conditions it meets,
+ * so the number of classes depends on the rule set, not on the vocabulary. Conditions are only ever added, which
+ * refines the classes without invalidating the transitions cached for coarser ones.
+ * Inflected forms are indexed like in PosPatternIndex, so an instance must be replaced when the tilde settings change.
+ */
+public class FeatureClasses {
+
+    private static final int[] NONE = new int[0];
+
+    private final int removeCharacters;
+    private final int addCharacters;
+    private final Map<String, Integer> surfaceNumbers = new HashMap<>();
+    private final Map<String, Integer> rootNumbers = new HashMap<>();
+    private final List<IPartMatcher> surfaces = new ArrayList<>();
+    private final List<IPartMatcher> roots = new ArrayList<>();
+    // indexes over the conditions, built when first needed after conditions were added.
+    private volatile Alphabet alphabet;
+    private volatile int generation = 0;
+
+    /**
+     * @param removeCharacters Number of characters removed from inflected forms, see PosPatternIndex.
+     * @param addCharacters Number of characters that may follow their stems.
+     */
+    public FeatureClasses(int removeCharacters, int addCharacters){
+        this.removeCharacters = removeCharacters;
+        this.addCharacters = addCharacters;
+    }
+
+    /**
+     * Registers the surface and root conditions of the pattern.
+     */
+    public synchronized void add(PosPattern pattern){
+        boolean added = add(pattern.getSurface(), this.surfaceNumbers, this.surfaces);
+        added |= add(pattern.getRoot(), this.rootNumbers, this.roots);
+        if (added){
+            this.alphabet = null;
+            this.generation++;
+        }
+    }
+
+    private static boolean add(IPartMatcher condition, Map<String, Integer> numbers, List<IPartMatcher> conditions){
+        if (condition==null || condition instanceof AnyPartMatcher) return false;
+        if (numbers.putIfAbsent(condition.toString(), conditions.size())!=null) return false;
+        conditions.add(condition);
+        return true;
+    }
+
+    /**
+     * @return A number that changes whenever conditions are added, so that classes computed before can be told apart.
+     */
+    public int getGeneration(){
+        return this.generation;
+    }
+
+    /**
+     * @param candidates Reusable list, see PosPatternIndex.Candidates.
+     * @return The class of the word.
+     */
+    FeatureClass get(WordFeatures word, PosPatternIndex.Candidates candidates){
+        Alphabet alphabet = this.alphabet;
+        if (alphabet==null) alphabet = this.getAlphabet();
+        int[] surfaces = alphabet.getSurfaces(word.getSurface(), candidates);
+        int[] roots = alphabet.getRoots(word.getRoot(), candidates);
+        MorphFeatures.Analysis morph = word.getMorph();
+        return new FeatureClass(surfaces, roots, word.getPOS().getRaw(), morph==null ? null : morph.getLowerCase());
+    }
+
+    private synchronized Alphabet getAlphabet(){
+        if (this.alphabet==null){
+            this.alphabet = new Alphabet(this.surfaces.toArray(new IPartMatcher[0]),
+                    this.roots.toArray(new IPartMatcher[0]), this.removeCharacters, this.addCharacters);
+        }
+        return this.alphabet;
+    }
+
+    /**
+     * The conditions registered at one point in time, with an index over each part.
+     */
+    private static class Alphabet {
+
+        private final IPartMatcher[] surfaces;
+        private final IPartMatcher[] roots;
+        private final PosPatternIndex surfaceIndex;
+        private final PosPatternIndex rootIndex;
+
+        private Alphabet(IPartMatcher[] surfaces, IPartMatcher[] roots, int removeCharacters, int addCharacters){
+            this.surfaces = surfaces;
+            this.roots = roots;
+            this.surfaceIndex = new PosPatternIndex(surfaces, true, removeCharacters, addCharacters);
+            this.rootIndex = new PosPatternIndex(roots, true, removeCharacters, addCharacters);
+        }
+
+        private int[] getSurfaces(PreparedToken token, PosPatternIndex.Candidates candidates){
+            return getMatching(this.surfaces, this.surfaceIndex, token, candidates);
+        }
+
+        private int[] getRoots(PreparedToken token, PosPatternIndex.Candidates candidates){
+            return getMatching(this.roots, this.rootIndex, token, candidates);
+        }
+
+        /**
+         * @return The numbers of the conditions that the token meets, in ascending order.
+         */
+        private static int[] getMatching(IPartMatcher[] conditions, PosPatternIndex index, PreparedToken token,
+                                         PosPatternIndex.Candidates candidates){
+            if (token.isNull() || conditions.length==0) return NONE;
+            index.getCandidates(token, candidates);
+            int size = 0;
+            for (int i=0; i<candidates.size(); i++){
+                int condition = candidates.get(i);
+                if (conditions[condition].matches(token)) candidates.set(size++, condition);
+            }
+            candidates.setSize(size);
+            return size==0 ? NONE : candidates.toArray();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+/**
+ * Matches one part (surface, root or POS) of a PosPattern against the corresponding part of a word.
+ */
+public interface IPartMatcher {
+
+    /**
+     * @param token The part of the word. Its text is never null.
+     * @return true if the token matches.
+     */
+    boolean matches(PreparedToken token);
+}
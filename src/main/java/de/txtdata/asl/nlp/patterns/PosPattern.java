@@ -0,0 +1,250 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import de.txtdata.asl.nlp.models.MorphFeatures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * A key of a PosPatternAnnotator dictionary, parsed into matchers for its parts.
+ * A pattern has the form surface.root.POS.morph, where each part may be left out or empty. Morph is a list of features
+ * separated by "|", all of which the word must have. The other parts may be plain text, a prefix ("Städt/"), a suffix
+ * ("/ung"), an inflected form ("Städt~") or a list of alternatives ("(NN|NE)"). The pattern "+" matches every word.
+ * Patterns starting with "*" are wildcards: "*" matches one or more words, "*{m,n}" between m and n words. As a normal
+ * pattern, they only match the literal text; the repetition is done by the annotator, which moves through counter
+ * states "*{m-1,n-1}", "*{m-2,n-2}" etc., see getNextWildcard(). For historical reasons, a counter can only be left
+ * when its lower bound is 1, so "*{0,n}" never completes a match.
+ */
+public class PosPattern {
+
+    private String key;
+    private boolean matchesAll = false;
+    private boolean matchesNothing = false;
+    // null if the pattern has no condition for this part.
+    private IPartMatcher surface;
+    private IPartMatcher root;
+    private IPartMatcher pos;
+    private String[] morphs;
+    // the bits of the morphs in MorphFeatures, unless there was no room to register all of them.
+    private long morphMask;
+    private boolean hasMorphMask;
+
+    private boolean wildcard = false;
+    private boolean wildcardExit = false;
+    private String nextWildcard = null;
+    private RuntimeException wildcardError = null;
+
+    private PosPattern(String key){
+        this.key = key;
+    }
+
+    /**
+     * @param key The dictionary key.
+     * @param ignoreCase Whether the root part should be lowercased.
+     * @param tildeMatch Function used to compare inflected forms, see TildePartMatcher.
+     */
+    public static PosPattern compile(String key, boolean ignoreCase, BiPredicate<String,String> tildeMatch){
+        PosPattern pattern = new PosPattern(key);
+        if (key.equals("+")){
+            pattern.matchesAll = true;
+            return pattern;
+        }
+        if (key.equals("")){
+            pattern.matchesNothing = true;
+            return pattern;
+        }
+        if (key.startsWith("*")){
+            pattern.compileWildcard();
+        }
+        String[] parts = split(key, PreparedToken.DIVIDER);
+        if (parts.length>=1){
+            pattern.surface = compilePart(parts[0], tildeMatch);
+        }
+        if (parts.length>=2 && parts[1].length()>0){
+            pattern.root = compilePart(ignoreCase ? parts[1].toLowerCase() : parts[1], tildeMatch);
+        }
+        if (parts.length>=3){
+            pattern.pos = compilePart(parts[2].toLowerCase(), tildeMatch);
+        }
+        if (parts.length>=4){
+            pattern.morphs = split(parts[3].toLowerCase(), '|');
+            pattern.hasMorphMask = true;
+            for (String morph : pattern.morphs){
+                int id = MorphFeatures.register(morph);
+                if (id==MorphFeatures.UNKNOWN) pattern.hasMorphMask = false;
+                else pattern.morphMask |= 1L << id;
+            }
+        }
+        return pattern;
+    }
+
+    private void compileWildcard(){
+        this.wildcard = true;
+        if (this.key.equals("*")){
+            this.wildcardExit = true;
+            this.nextWildcard = "*";
+            return;
+        }
+        int b1 = this.key.indexOf("{");
+        int c = this.key.indexOf(",");
+        int b2 = this.key.indexOf("}");
+        if (b2 > 0 && b2 > c && c > b1){
+            try{
+                int min = Integer.parseInt(this.key.substring(b1 + 1, c));
+                int max = Integer.parseInt(this.key.substring(c + 1, b2));
+                this.wildcardExit = min==1;
+                if (min>1) min--;
+                if (max>1) this.nextWildcard = "*{" + min + "," + (max-1) + "}";
+            }catch(RuntimeException e){
+                this.wildcardError = e;
+            }
+        }
+    }
+
+    /**
+     * Compiles one part of a pattern, e.g. the surface or POS part.
+     */
+    public static IPartMatcher compilePart(String part, BiPredicate<String,String> tildeMatch){
+        if (part.length()==0){
+            return new AnyPartMatcher();
+        }else if (part.startsWith("/")){
+            return new SuffixPartMatcher(part);
+        }else if (part.endsWith("/")){
+            return new PrefixPartMatcher(part);
+        }else if (part.endsWith("~")){
+            return new TildePartMatcher(part, tildeMatch);
+        }else if (part.startsWith("(") && part.endsWith(")")){
+            String[] alternatives = split(part.substring(1, part.length()-1), '|');
+            IPartMatcher[] matchers = new IPartMatcher[alternatives.length];
+            for (int i=0; i<alternatives.length; i++){
+                matchers[i] = compilePart(alternatives[i], tildeMatch);
+            }
+            return new AlternativePartMatcher(part, matchers);
+        }
+        return new ExactPartMatcher(part);
+    }
+
+    public boolean matches(WordFeatures word){
+        if (this.matchesAll) return true;
+        if (this.matchesNothing) return false;
+        if (this.surface!=null && !this.matches(this.surface, word.getSurface())) return false;
+        if (this.root!=null && !this.matches(this.root, word.getRoot())) return false;
+        if (this.pos!=null && !this.matches(this.pos, word.getPOS())) return false;
+        if (this.morphs!=null){
+            MorphFeatures.Analysis wordMorph = word.getMorph();
+            if (wordMorph==null) return false;
+            if (this.hasMorphMask){
+                if ((wordMorph.getMask() & this.morphMask)!=this.morphMask) return false;
+            }else{
+                for (String morph : this.morphs){
+                    if (!wordMorph.hasFeature(morph)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(IPartMatcher matcher, PreparedToken token){
+        if (token.isNull()) return false;
+        return matcher.matches(token);
+    }
+
+    public String getKey(){
+        return this.key;
+    }
+
+    public boolean matchesAll(){
+        return this.matchesAll;
+    }
+
+    public boolean matchesNothing(){
+        return this.matchesNothing;
+    }
+
+    /**
+     * @return true if the key starts with "*".
+     */
+    public boolean isWildcard(){
+        return this.wildcard;
+    }
+
+    /**
+     * @return true if a match may end after a word matched by this wildcard.
+     */
+    public boolean exitsWildcard(){
+        return this.wildcardExit;
+    }
+
+    /**
+     * @return The key of the wildcard that must match the next word if the match continues, or null if it can't.
+     * For "*", this is "*" again.
+     */
+    public String getNextWildcard(){
+        return this.nextWildcard;
+    }
+
+    /**
+     * @return The exception that occurred when parsing the bounds of the wildcard, or null.
+     */
+    public RuntimeException getWildcardError(){
+        return this.wildcardError;
+    }
+
+    public IPartMatcher getSurface(){
+        return this.surface;
+    }
+
+    public IPartMatcher getRoot(){
+        return this.root;
+    }
+
+    public IPartMatcher getPOS(){
+        return this.pos;
+    }
+
+    public String[] getMorphs(){
+        return this.morphs;
+    }
+
+    public String toString(){
+        return this.key;
+    }
+
+    /**
+     * Splits like String.split() with a single character, i.e. trailing empty strings are removed, but a string
+     * without the divider is returned as it is.
+     */
+    private static String[] split(String s, char divider){
+        if (s.indexOf(divider)<0) return new String[]{s};
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i=0; i<=s.length(); i++){
+            if (i==s.length() || s.charAt(i)==divider){
+                parts.add(s.substring(start, i));
+                start = i+1;
+            }
+        }
+        int size = parts.size();
+        while (size>0 && parts.get(size-1).length()==0) size--;
+        return parts.subList(0, size).toArray(new String[0]);
+    }
+}
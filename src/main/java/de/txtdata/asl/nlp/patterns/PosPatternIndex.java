@@ -0,0 +1,306 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import de.txtdata.asl.util.dataStructures.RecursiveDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Index over the keys of one node of a PosPatternAnnotator dictionary, which finds the keys that may match a word
+ * without testing every key. Keys are partitioned by the kind of pattern: keys with a plain surface are found with a
+ * hash lookup of the word's surface, keys that only restrict the POS with a lookup of its tag. Keys with a surface
+ * prefix ("Städt/"), suffix ("/ung") or inflected form ("Städt~") are found with one walk over the word's characters
+ * through a prefix trie, a trie of reversed suffixes and a trie of word stems, in which the tilde length limits are
+ * checked. Only wildcards and other complex keys are returned for every word.
+ * The returned keys are candidates: they still have to be tested with PosPattern.matches(). An index can also be built
+ * over single part matchers, e.g. the surface conditions of all patterns, see FeatureClasses.
+ */
+public class PosPatternIndex {
+
+    private String[] keys;
+
+    private int[] always;
+    private Map<String, int[]> surfaces = new HashMap<>();
+    private Map<String, int[]> posTags = new HashMap<>();
+    // uppercase prefixes, reversed uppercase suffixes, and stems of inflected forms with case folded characters.
+    private CharTrie prefixes = new CharTrie();
+    private CharTrie suffixes = new CharTrie();
+    private CharTrie tildes = new CharTrie();
+    private int tildeRemoveCharacters;
+    private int tildeAddCharacters;
+
+    /**
+     * Creates an index in which keys with inflected forms are returned for every word, for annotators that use their
+     * own comparison of inflected forms.
+     * @param patterns Provides the parsed form of each key.
+     */
+    public PosPatternIndex(RecursiveDictionary<?> dictionary, Function<String, PosPattern> patterns){
+        this(dictionary, patterns, false, 0, 0);
+    }
+
+    /**
+     * @param patterns Provides the parsed form of each key.
+     * @param indexTildes Whether inflected forms are compared as in PosPatternAnnotator.getTildeMatch(), so that they
+     * can be indexed by their stems.
+     * @param removeCharacters Number of characters removed from the pattern to get the stem.
+     * @param addCharacters Number of characters that may follow the stem in addition to the removed ones.
+     */
+    public PosPatternIndex(RecursiveDictionary<?> dictionary, Function<String, PosPattern> patterns,
+                           boolean indexTildes, int removeCharacters, int addCharacters){
+        this.tildeRemoveCharacters = removeCharacters;
+        this.tildeAddCharacters = addCharacters;
+        Collection<String> keyCollection = dictionary.keys();
+        this.keys = keyCollection.toArray(new String[0]);
+        List<Integer> always = new ArrayList<>();
+        Map<String, List<Integer>> surfaces = new HashMap<>();
+        Map<String, List<Integer>> posTags = new HashMap<>();
+        for (int i=0; i<this.keys.length; i++){
+            String key = this.keys[i];
+            PosPattern pattern = patterns.apply(key);
+            IPartMatcher surface = pattern.getSurface();
+            IPartMatcher pos = pattern.getPOS();
+            if (pattern.matchesNothing()){
+                continue;
+            }else if (key.startsWith("*") || pattern.matchesAll()){
+                always.add(i);
+            }else if (!this.addSurface(surface, i, surfaces, indexTildes)){
+                if ((surface==null || surface instanceof AnyPartMatcher) && isExact(pos)){
+                    for (String text : getTexts(pos)) add(posTags, text, i);
+                }else{
+                    always.add(i);
+                }
+            }
+        }
+        this.always = toArray(always);
+        toArrays(surfaces, this.surfaces);
+        toArrays(posTags, this.posTags);
+    }
+
+    /**
+     * Creates an index over single part matchers, whose candidates are found with getCandidates(PreparedToken,
+     * Candidates). The number of a matcher is its position in the array.
+     */
+    public PosPatternIndex(IPartMatcher[] matchers, boolean indexTildes, int removeCharacters, int addCharacters){
+        this.tildeRemoveCharacters = removeCharacters;
+        this.tildeAddCharacters = addCharacters;
+        this.keys = new String[matchers.length];
+        List<Integer> always = new ArrayList<>();
+        Map<String, List<Integer>> surfaces = new HashMap<>();
+        for (int i=0; i<matchers.length; i++){
+            this.keys[i] = matchers[i].toString();
+            if (!this.addSurface(matchers[i], i, surfaces, indexTildes)) always.add(i);
+        }
+        this.always = toArray(always);
+        toArrays(surfaces, this.surfaces);
+    }
+
+    /**
+     * Adds the key with the given surface matcher to the lookup structures for surfaces.
+     * @return false if the surface can't be indexed.
+     */
+    private boolean addSurface(IPartMatcher surface, int i, Map<String, List<Integer>> surfaces, boolean indexTildes){
+        if (isExact(surface)){
+            for (String text : getTexts(surface)) add(surfaces, text, i);
+        }else if (surface instanceof PrefixPartMatcher){
+            this.prefixes.add(((PrefixPartMatcher)surface).getPrefix(), false, i);
+        }else if (surface instanceof SuffixPartMatcher){
+            this.suffixes.add(((SuffixPartMatcher)surface).getSuffix(), true, i);
+        }else if (surface instanceof TildePartMatcher && indexTildes){
+            String text = ((TildePartMatcher)surface).getPattern();
+            // the pattern itself always matches, the stem only if it is long enough.
+            add(surfaces, text, i);
+            String lowerCase = text.toLowerCase();
+            int removeCharacters = this.tildeRemoveCharacters;
+            if (lowerCase.length()>removeCharacters && removeCharacters>=-1){
+                this.tildes.add(lowerCase.substring(0, lowerCase.length() - (1 + removeCharacters)), false, i);
+            }
+        }else{
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The key with the given number, as returned in the candidates.
+     */
+    public String getKey(int index){
+        return this.keys[index];
+    }
+
+    /**
+     * Fills the given candidates with the numbers of all keys that may match the word, in the order of the keys.
+     */
+    public void getCandidates(WordFeatures word, Candidates candidates){
+        candidates.clear();
+        candidates.addAll(this.always);
+        this.addSurfaceCandidates(word.getSurface(), candidates);
+        PreparedToken pos = word.getPOS();
+        if (!pos.isNull()){
+            candidates.addAll(this.posTags.get(pos.getText()));
+        }
+        candidates.sort();
+    }
+
+    /**
+     * Fills the given candidates with the numbers of all matchers that may match the token, for an index over part
+     * matchers.
+     */
+    public void getCandidates(PreparedToken token, Candidates candidates){
+        candidates.clear();
+        candidates.addAll(this.always);
+        this.addSurfaceCandidates(token, candidates);
+        candidates.sort();
+    }
+
+    private void addSurfaceCandidates(PreparedToken surface, Candidates candidates){
+        if (!surface.isNull()){
+            candidates.addAll(this.surfaces.get(surface.getText()));
+            if (!this.prefixes.isEmpty() || !this.suffixes.isEmpty()){
+                String upperCase = surface.getUpperCase();
+                CharTrie node = this.prefixes;
+                for (int i=0; node!=null; i++){
+                    candidates.addAll(node.getValues());
+                    node = i<upperCase.length() ? node.get(upperCase.charAt(i)) : null;
+                }
+                node = this.suffixes;
+                for (int i=upperCase.length()-1; node!=null; i--){
+                    candidates.addAll(node.getValues());
+                    node = i>=0 ? node.get(upperCase.charAt(i)) : null;
+                }
+            }
+            if (!this.tildes.isEmpty()){
+                String text = surface.getLowerCase();
+                // a stem of length n matches words with up to n + removed + added characters.
+                int minStemLength = text.length() - this.tildeRemoveCharacters - this.tildeAddCharacters;
+                CharTrie node = this.tildes;
+                for (int i=0; node!=null; i++){
+                    if (i>=minStemLength) candidates.addAll(node.getValues());
+                    node = i<text.length() ? node.get(text.charAt(i)) : null;
+                }
+            }
+        }
+    }
+
+    private static boolean isExact(IPartMatcher matcher){
+        if (matcher instanceof ExactPartMatcher) return true;
+        if (!(matcher instanceof AlternativePartMatcher)) return false;
+        for (IPartMatcher alternative : ((AlternativePartMatcher)matcher).getAlternatives()){
+            if (!(alternative instanceof ExactPartMatcher)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return All texts that an exact matcher matches, i.e. the pattern itself and, for lists, all alternatives.
+     */
+    private static List<String> getTexts(IPartMatcher matcher){
+        List<String> texts = new ArrayList<>();
+        texts.add(matcher.toString());
+        if (matcher instanceof AlternativePartMatcher){
+            for (IPartMatcher alternative : ((AlternativePartMatcher)matcher).getAlternatives()){
+                texts.add(((ExactPartMatcher)alternative).getText());
+            }
+        }
+        return texts;
+    }
+
+    private static void add(Map<String, List<Integer>> map, String text, int index){
+        List<Integer> list = map.computeIfAbsent(text, k -> new ArrayList<>(1));
+        if (list.isEmpty() || list.get(list.size()-1)!=index) list.add(index);
+    }
+
+    private static void toArrays(Map<String, List<Integer>> lists, Map<String, int[]> arrays){
+        for (Map.Entry<String, List<Integer>> entry : lists.entrySet()){
+            arrays.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    private static int[] toArray(Collection<Integer> values){
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) array[i++] = value;
+        return array;
+    }
+
+    /**
+     * Reusable list of key numbers, see getCandidates().
+     */
+    public static class Candidates {
+
+        private int[] values = new int[16];
+        private int size;
+
+        public void clear(){
+            this.size = 0;
+        }
+
+        public int size(){
+            return this.size;
+        }
+
+        public int get(int i){
+            return this.values[i];
+        }
+
+        void add(int index){
+            if (this.size==this.values.length) this.values = Arrays.copyOf(this.values, this.values.length*2);
+            this.values[this.size++] = index;
+        }
+
+        void set(int i, int index){
+            this.values[i] = index;
+        }
+
+        void setSize(int size){
+            this.size = size;
+        }
+
+        int[] toArray(){
+            return Arrays.copyOf(this.values, this.size);
+        }
+
+        void addAll(int[] indexes){
+            if (indexes==null) return;
+            if (this.size+indexes.length>this.values.length){
+                this.values = Arrays.copyOf(this.values, Math.max(this.values.length*2, this.size+indexes.length));
+            }
+            System.arraycopy(indexes, 0, this.values, this.size, indexes.length);
+            this.size += indexes.length;
+        }
+
+        /**
+         * Sorts the values and removes duplicates.
+         */
+        private void sort(){
+            Arrays.sort(this.values, 0, this.size);
+            int size = 0;
+            for (int i=0; i<this.size; i++){
+                if (size==0 || this.values[size-1]!=this.values[i]) this.values[size++] = this.values[i];
+            }
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import de.txtdata.asl.util.dataStructures.RecursiveDictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Matching data of one node of a PosPatternAnnotator dictionary, kept by the annotator and built when the node is
+ * first visited.
+ * Holds the parsed keys of the node, a PosPatternIndex for nodes with many keys, and for these nodes a cache of the
+ * keys that matched words of each FeatureClass, so that matching a word of a known class is a single lookup. These
+ * transitions are built lazily; when their maximum number is reached, they are dropped and collected anew.
+ * Wildcards are handled as counter states: the node that continues a wildcard match after a word (a node with the
+ * single key "*{m-1,n-1}" leading to the same target) is created once per target and key, and then shared.
+ */
+public class PosPatternNode<T> {
+
+    private final RecursiveDictionary<T> dictionary;
+    private final int version;
+    private final int keyCount;
+    private final boolean frozen;
+
+    private final String[] keys;
+    private final PosPattern[] patterns;
+    private final int[] wildcards;
+    private final PosPatternIndex index;
+    private final FeatureClasses classes;
+    private final ConcurrentHashMap<FeatureClass, int[]> transitions;
+    private final int maxTransitions;
+
+    private volatile ConcurrentHashMap<String, RecursiveDictionary<T>> wildcardSources;
+
+    /**
+     * @param version Version of the annotator's matching configuration; the node must be rebuilt when it changes.
+     * @param index The index over the keys of the dictionary, or null if all keys should be tested.
+     * @param classes The registry in which the patterns of the keys are registered, used if indexed.
+     * @param maxTransitions Maximum number of FeatureClasses for which the matching keys are cached, if indexed.
+     */
+    public PosPatternNode(RecursiveDictionary<T> dictionary, int version, Function<String, PosPattern> patterns,
+                          PosPatternIndex index, FeatureClasses classes, int maxTransitions){
+        this.dictionary = dictionary;
+        this.version = version;
+        this.keyCount = dictionary.getKeyCount();
+        this.frozen = dictionary.isFrozen();
+        this.keys = dictionary.keys().toArray(new String[0]);
+        this.patterns = new PosPattern[this.keys.length];
+        List<Integer> wildcards = new ArrayList<>();
+        for (int i=0; i<this.keys.length; i++){
+            this.patterns[i] = patterns.apply(this.keys[i]);
+            if (this.patterns[i].isWildcard()) wildcards.add(i);
+        }
+        this.wildcards = wildcards.stream().mapToInt(Integer::intValue).toArray();
+        this.index = index;
+        this.classes = classes;
+        this.transitions = index==null ? null : new ConcurrentHashMap<>();
+        this.maxTransitions = maxTransitions;
+    }
+
+    /**
+     * @return true if this node still describes the keys of its dictionary node, i.e. no keys were added and the
+     * matching configuration has the given version.
+     */
+    public boolean isValid(int version){
+        return this.version==version
+                && this.keyCount==this.dictionary.getKeyCount() && this.frozen==this.dictionary.isFrozen();
+    }
+
+    /**
+     * Fills the given list with the numbers of all keys whose pattern matches the word, in the order of the keys.
+     */
+    public void match(WordFeatures word, PosPatternIndex.Candidates results){
+        if (this.index==null){
+            results.clear();
+            for (int i=0; i<this.patterns.length; i++){
+                if (this.patterns[i].matches(word)) results.add(i);
+            }
+            return;
+        }
+        FeatureClass featureClass = word.getFeatureClass(this.classes);
+        int[] cached = this.transitions.get(featureClass);
+        if (cached!=null){
+            results.clear();
+            results.addAll(cached);
+            return;
+        }
+        this.index.getCandidates(word, results);
+        int size = 0;
+        for (int i=0; i<results.size(); i++){
+            int key = results.get(i);
+            if (this.patterns[key].matches(word)) results.set(size++, key);
+        }
+        results.setSize(size);
+        if (this.transitions.size()>=this.maxTransitions) this.transitions.clear();
+        this.transitions.putIfAbsent(featureClass, results.toArray());
+    }
+
+    public int size(){
+        return this.keys.length;
+    }
+
+    public String getKey(int index){
+        return this.keys[index];
+    }
+
+    public PosPattern getPattern(int index){
+        return this.patterns[index];
+    }
+
+    /**
+     * @return The numbers of all keys that are wildcards, in ascending order.
+     */
+    public int[] getWildcards(){
+        return this.wildcards;
+    }
+
+    /**
+     * @return The counter state for the given wildcard key that leads to this node, i.e. a node whose only key is the
+     * given one, with this node as its child.
+     */
+    public RecursiveDictionary<T> getWildcardSource(String key){
+        ConcurrentHashMap<String, RecursiveDictionary<T>> sources = this.wildcardSources;
+        if (sources==null){
+            synchronized (this){
+                if (this.wildcardSources==null) this.wildcardSources = new ConcurrentHashMap<>();
+                sources = this.wildcardSources;
+            }
+        }
+        return sources.computeIfAbsent(key, k -> {
+            RecursiveDictionary<T> source = new RecursiveDictionary<>();
+            source.put(k, this.dictionary);
+            return source;
+        });
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+/**
+ * Matcher for pattern parts like "Städt/", which match tokens that start with the given text, ignoring case.
+ */
+public class PrefixPartMatcher implements IPartMatcher {
+
+    private String pattern;
+    private String prefix;
+
+    /**
+     * @param pattern The pattern part, including the slash.
+     */
+    public PrefixPartMatcher(String pattern){
+        this.pattern = pattern;
+        this.prefix = pattern.substring(0, pattern.length()-1).toUpperCase();
+    }
+
+    /**
+     * @return The prefix in uppercase.
+     */
+    public String getPrefix(){
+        return this.prefix;
+    }
+
+    @Override
+    public boolean matches(PreparedToken token){
+        return token.getText().equals(this.pattern) || token.getUpperCase().startsWith(this.prefix);
+    }
+
+    public String toString(){
+        return this.pattern;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+/**
+ * One part of a word (surface, root or POS) in the form in which it is compared to pattern parts: dots are replaced by
+ * the escape character, since a dot separates the parts of a pattern. The uppercase and lowercase forms are computed
+ * when first needed.
+ * Instances are reused for many words.
+ */
+public class PreparedToken {
+
+    public static final char DIVIDER = '.';
+    public static final char DIVIDER_ESCAPE = '§';
+
+    private String raw;
+    private String text;
+    private String upperCase;
+    private String lowerCase;
+
+    public void set(String raw){
+        this.raw = raw;
+        this.text = null;
+        this.upperCase = null;
+        this.lowerCase = null;
+    }
+
+    public boolean isSetTo(String raw){
+        return this.raw==raw;
+    }
+
+    public String getRaw(){
+        return this.raw;
+    }
+
+    public boolean isNull(){
+        return this.raw==null;
+    }
+
+    public String getText(){
+        if (this.text==null && this.raw!=null){
+            this.text = this.raw.indexOf(DIVIDER)<0 ? this.raw : this.raw.replace(DIVIDER, DIVIDER_ESCAPE);
+        }
+        return this.text;
+    }
+
+    public String getUpperCase(){
+        if (this.upperCase==null && this.raw!=null){
+            this.upperCase = this.getText().toUpperCase();
+        }
+        return this.upperCase;
+    }
+
+    public String getLowerCase(){
+        if (this.lowerCase==null && this.raw!=null){
+            this.lowerCase = this.getText().toLowerCase();
+        }
+        return this.lowerCase;
+    }
+}
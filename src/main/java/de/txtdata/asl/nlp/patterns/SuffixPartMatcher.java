@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+/**
+ * Matcher for pattern parts like "/ung", which match tokens that end with the given text, ignoring case.
+ */
+public class SuffixPartMatcher implements IPartMatcher {
+
+    private String pattern;
+    private String suffix;
+
+    /**
+     * @param pattern The pattern part, including the slash.
+     */
+    public SuffixPartMatcher(String pattern){
+        this.pattern = pattern;
+        this.suffix = pattern.substring(1).toUpperCase();
+    }
+
+    /**
+     * @return The suffix in uppercase.
+     */
+    public String getSuffix(){
+        return this.suffix;
+    }
+
+    @Override
+    public boolean matches(PreparedToken token){
+        return token.getText().equals(this.pattern) || token.getUpperCase().endsWith(this.suffix);
+    }
+
+    public String toString(){
+        return this.pattern;
+    }
+}
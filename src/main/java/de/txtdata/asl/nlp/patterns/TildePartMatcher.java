@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import java.util.function.BiPredicate;
+
+/**
+ * Matcher for pattern parts like "Städt~", which match inflected forms of a word. The actual comparison is done by
+ * the given function, so that the annotator can adjust how many characters may differ.
+ */
+public class TildePartMatcher implements IPartMatcher {
+
+    private String pattern;
+    private BiPredicate<String,String> tildeMatch;
+
+    /**
+     * @param pattern The pattern part, including the tilde.
+     * @param tildeMatch Function that is called with the pattern and the token.
+     */
+    public TildePartMatcher(String pattern, BiPredicate<String,String> tildeMatch){
+        this.pattern = pattern;
+        this.tildeMatch = tildeMatch;
+    }
+
+    public String getPattern(){
+        return this.pattern;
+    }
+
+    @Override
+    public boolean matches(PreparedToken token){
+        return token.getText().equals(this.pattern) || this.tildeMatch.test(this.pattern, token.getText());
+    }
+
+    public String toString(){
+        return this.pattern;
+    }
+}
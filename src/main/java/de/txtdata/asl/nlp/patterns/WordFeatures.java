@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.patterns;
+
+import de.txtdata.asl.nlp.models.MorphFeatures;
+import de.txtdata.asl.nlp.models.Word;
+
+/**
+ * The parts of a word that PosPatterns are matched against, prepared once per word instead of once per pattern.
+ * An instance is reused for many words, but must only be used by one thread at a time.
+ */
+public class WordFeatures {
+
+    private Word word;
+    private PreparedToken surface = new PreparedToken();
+    private PreparedToken root = new PreparedToken();
+    private PreparedToken pos = new PreparedToken();
+    private MorphFeatures.Analysis morph;
+
+    private FeatureClass featureClass;
+    private FeatureClasses featureClasses;
+    private int featureClassesGeneration;
+    private PosPatternIndex.Candidates conditions = new PosPatternIndex.Candidates();
+
+    /**
+     * @param ignoreCase Whether the surface should be matched in lowercase.
+     */
+    public void set(Word word, boolean ignoreCase){
+        this.word = word;
+        this.surface.set(ignoreCase ? word.getLowerCaseSurface() : word.getSurface());
+        this.root.set(word.getRoot());
+        this.pos.set(word.getLowerCasePOS());
+        this.morph = word.getMorphAnalysis();
+        this.featureClass = null;
+        this.featureClasses = null;
+    }
+
+    /**
+     * @return true if this instance has been set to the given word and the word hasn't been changed since.
+     */
+    public boolean isSetTo(Word word, boolean ignoreCase){
+        return this.word==word
+                && this.surface.isSetTo(ignoreCase ? word.getLowerCaseSurface() : word.getSurface())
+                && this.root.isSetTo(word.getRoot())
+                && this.pos.isSetTo(word.getLowerCasePOS())
+                && this.morph==word.getMorphAnalysis();
+    }
+
+    public Word getWord(){
+        return this.word;
+    }
+
+    public PreparedToken getSurface(){
+        return this.surface;
+    }
+
+    public PreparedToken getRoot(){
+        return this.root;
+    }
+
+    public PreparedToken getPOS(){
+        return this.pos;
+    }
+
+    /**
+     * @return The class of the word over the conditions of the given registry.
+     */
+    public FeatureClass getFeatureClass(FeatureClasses classes){
+        int generation = classes.getGeneration();
+        if (this.featureClasses!=classes || this.featureClassesGeneration!=generation){
+            this.featureClass = classes.get(this, this.conditions);
+            this.featureClasses = classes;
+            this.featureClassesGeneration = generation;
+        }
+        return this.featureClass;
+    }
+
+    /**
+     * @return The morphological features of the word, or null if it has none.
+     */
+    public MorphFeatures.Analysis getMorph(){
+        return this.morph;
+    }
+}
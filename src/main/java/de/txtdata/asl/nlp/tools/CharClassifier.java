@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import de.txtdata.asl.nlp.models.Word;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+
+/**
+ * Classifies characters one at a time, using a table for ASCII characters.
+ * Use getInstance() or create() to get the fastest classifier that is available.
+ */
+public class CharClassifier implements ICharClassifier {
+
+    private static final String VECTOR_CLASSIFIER = "de.txtdata.asl.nlp.tools.VectorCharClassifier";
+    private static final Constructor<? extends ICharClassifier> VECTOR_CONSTRUCTOR = findVectorClassifier();
+
+    private static volatile ICharClassifier instance;
+
+    protected final String punctuations;
+    // class flags (bit c for class c) of ASCII characters.
+    private final int[] asciiClasses = new int[128];
+
+    public CharClassifier(String punctuations){
+        this.punctuations = punctuations;
+        for (char c=0; c<128; c++){
+            this.asciiClasses[c] = this.computeClasses(c);
+        }
+    }
+
+    /**
+     * @return A classifier for Word.getPunctuations(), which is recreated if the punctuations change.
+     */
+    public static ICharClassifier getInstance(){
+        String punctuations = Word.getPunctuations();
+        ICharClassifier classifier = instance;
+        if (classifier==null || !punctuations.equals(classifier.getPunctuations())){
+            classifier = create(punctuations);
+            instance = classifier;
+        }
+        return classifier;
+    }
+
+    /**
+     * @return A VectorCharClassifier if it is available, a CharClassifier otherwise.
+     */
+    public static ICharClassifier create(String punctuations){
+        if (VECTOR_CONSTRUCTOR!=null){
+            try{
+                return VECTOR_CONSTRUCTOR.newInstance(punctuations);
+            }catch(ReflectiveOperationException | LinkageError e){
+                // fall back to the scalar classifier
+            }
+        }
+        return new CharClassifier(punctuations);
+    }
+
+    /**
+     * @return true if create() returns classifiers that use the Vector API.
+     */
+    public static boolean isVectorized(){
+        return VECTOR_CONSTRUCTOR!=null;
+    }
+
+    @Override
+    public String getPunctuations(){
+        return this.punctuations;
+    }
+
+    /**
+     * @return The classes of the character, with bit c set for class c.
+     */
+    public int getClasses(char c){
+        if (c<128) return this.asciiClasses[c];
+        return this.computeClasses(c);
+    }
+
+    @Override
+    public void classify(char[] text, int from, int to, long[] masks){
+        Arrays.fill(masks, 0L);
+        for (int i=from; i<to; i++){
+            this.addClasses(text[i], i-from, masks);
+        }
+    }
+
+    /**
+     * Sets the bits for the given character at the given position in the masks.
+     */
+    protected void addClasses(char c, int position, long[] masks){
+        int classes = this.getClasses(c);
+        while (classes!=0){
+            int cls = Integer.numberOfTrailingZeros(classes);
+            masks[cls] |= 1L << position;
+            classes &= classes-1;
+        }
+    }
+
+    private int computeClasses(char c){
+        int classes = 0;
+        if (Character.isWhitespace(c) || Character.getType(c)==Character.SPACE_SEPARATOR) classes |= 1 << WHITESPACE;
+        if (this.punctuations.indexOf(c)>=0) classes |= 1 << PUNCTUATION;
+        if (Character.isUpperCase(c)) classes |= 1 << UPPERCASE;
+        if (Character.isLowerCase(c)) classes |= 1 << LOWERCASE;
+        if (Character.isDigit(c)) classes |= 1 << DIGIT;
+        if (c<=' ') classes |= 1 << BLANK;
+        return classes;
+    }
+
+    private static Constructor<? extends ICharClassifier> findVectorClassifier(){
+        if ("false".equalsIgnoreCase(System.getProperty("asl.vector"))) return null;
+        try{
+            Class<? extends ICharClassifier> type = Class.forName(VECTOR_CLASSIFIER).asSubclass(ICharClassifier.class);
+            Constructor<? extends ICharClassifier> constructor = type.getConstructor(String.class);
+            // fails if the jdk.incubator.vector module is not available at runtime
+            constructor.newInstance(Word.getPunctuations());
+            return constructor;
+        }catch(ReflectiveOperationException | LinkageError | RuntimeException e){
+            return null;
+        }
+    }
+}
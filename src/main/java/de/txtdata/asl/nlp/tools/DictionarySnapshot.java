@@ -0,0 +1,446 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.nlp.tools;
+
+import de.txtdata.asl.nlp.annotators.WhitelistAnnotator;
+import de.txtdata.asl.nlp.models.DictionaryEntry;
+import de.txtdata.asl.nlp.models.Language;
+import de.txtdata.asl.util.dataStructures.ITokenAutomaton;
+import de.txtdata.asl.util.dataStructures.TokenAutomaton;
+import de.txtdata.asl.util.misc.AslException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled whitelist dictionary in a versioned binary file, which is memory-mapped and matched against directly.
+ * The file contains the complete token automaton of a WhitelistAnnotator together with all dictionary entries, so
+ * no dictionary files need to be parsed at startup and no heap objects are created per entry. DictionaryEntry objects
+ * are only decoded for states that actually produce annotations, once per state, and then shared like the meanings of
+ * a RecursiveDictionary.
+ * Snapshots are written with write() or the main() method and opened with open(). Files are limited to 2 GB.
+ */
+public class DictionarySnapshot implements ITokenAutomaton<DictionaryEntry> {
+
+    public static final int MAGIC   = 0x54445753; // "TDWS"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 13;
+    // bits of the flags in the header.
+    private static final int IGNORE_CASE    = 1;
+    private static final int IGNORE_ACCENTS = 2;
+
+    private ByteBuffer buffer;
+    private boolean ignoreCase;
+    private boolean ignoreAccents;
+    // decoded meanings of the states that have been matched so far.
+    private final ConcurrentHashMap<Integer, List<DictionaryEntry>> meanings = new ConcurrentHashMap<>();
+
+    private int stateCount;
+    private int hashCapacity;
+
+    // byte offsets of the sections of the file
+    private int stringStart;
+    private int chars;
+    private int hashSlots;
+    private int childStart;
+    private int childTokens;
+    private int childStates;
+    private int failure;
+    private int output;
+    private int depth;
+    private int meaningStart;
+    private int meaningRefs;
+    private int entrySurface;
+    private int entryType;
+    private int entryTagStart;
+    private int entryTagCount;
+    private int tagRefs;
+
+    /**
+     * Compiles dictionary files into a snapshot.
+     * Usage: DictionarySnapshot &lt;languageCode&gt; &lt;dictionariesLocation&gt; &lt;snapshotFile&gt; [ignoreCase]
+     */
+    public static void main(String[] args) {
+        if (args.length<3){
+            System.out.println("Usage: DictionarySnapshot <languageCode> <dictionariesLocation> <snapshotFile> [ignoreCase]");
+            return;
+        }
+        boolean ignoreCase = args.length<4 || Boolean.parseBoolean(args[3]);
+        WhitelistAnnotator annotator = new WhitelistAnnotator(new Language(args[0]), args[1], ignoreCase);
+        annotator.writeSnapshot(args[2]);
+    }
+
+    private DictionarySnapshot(ByteBuffer buffer){
+        this.buffer = buffer;
+        if (buffer.getInt(0)!=MAGIC){
+            throw new AslException(new IOException("Not a dictionary snapshot."));
+        }
+        if (buffer.getInt(4)!=VERSION){
+            throw new AslException(new IOException("Unsupported dictionary snapshot version: " + buffer.getInt(4)));
+        }
+        int flags               = buffer.getInt(8);
+        this.ignoreCase         = (flags & IGNORE_CASE)!=0;
+        this.ignoreAccents      = (flags & IGNORE_ACCENTS)!=0;
+        int stringCount         = buffer.getInt(12);
+        int totalChars          = buffer.getInt(16);
+        this.hashCapacity       = buffer.getInt(20);
+        this.stateCount         = buffer.getInt(24);
+        int childCount          = buffer.getInt(28);
+        int meaningRefCount     = buffer.getInt(32);
+        int entryCount          = buffer.getInt(36);
+        int tagRefCount         = buffer.getInt(40);
+
+        this.stringStart   = HEADER_INTS*4;
+        this.chars         = this.stringStart   + 4*(stringCount+1);
+        this.hashSlots     = this.chars         + 2*totalChars;
+        this.childStart    = this.hashSlots     + 4*this.hashCapacity;
+        this.childTokens   = this.childStart    + 4*(this.stateCount+1);
+        this.childStates   = this.childTokens   + 4*childCount;
+        this.failure       = this.childStates   + 4*childCount;
+        this.output        = this.failure       + 4*this.stateCount;
+        this.depth         = this.output        + 4*this.stateCount;
+        this.meaningStart  = this.depth         + 4*this.stateCount;
+        this.meaningRefs   = this.meaningStart  + 4*(this.stateCount+1);
+        this.entrySurface  = this.meaningRefs   + 4*meaningRefCount;
+        this.entryType     = this.entrySurface  + 4*entryCount;
+        this.entryTagStart = this.entryType     + 4*entryCount;
+        this.entryTagCount = this.entryTagStart + 4*entryCount;
+        this.tagRefs       = this.entryTagCount + 4*entryCount;
+        if (this.tagRefs + 4*tagRefCount != buffer.limit()){
+            throw new AslException(new IOException("Dictionary snapshot is truncated or corrupt."));
+        }
+    }
+
+    /**
+     * Memory-maps a snapshot file.
+     */
+    public static DictionarySnapshot open(String fileName){
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()){
+            return new DictionarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }catch(IOException e){
+            throw new AslException(e);
+        }
+    }
+
+    /**
+     * @return true if the dictionary was compiled case-insensitively, in which case tokens need to be lowercased
+     * before they are looked up.
+     */
+    public boolean isIgnoreCase(){
+        return this.ignoreCase;
+    }
+
+    /**
+     * @return true if the dictionary was compiled without diacritics, in which case tokens need to be folded (see
+     * Word.getFoldedSurface()) before they are looked up.
+     */
+    public boolean isIgnoreAccents(){
+        return this.ignoreAccents;
+    }
+
+    @Override
+    public int getTokenId(String token){
+        int mask = this.hashCapacity-1;
+        int slot = token.hashCode() & mask;
+        while (true){
+            int id = this.getInt(this.hashSlots, slot);
+            if (id==-1) return UNKNOWN_TOKEN;
+            if (this.stringEquals(id, token)) return id;
+            slot = (slot+1) & mask;
+        }
+    }
+
+    @Override
+    public int next(int state, int tokenId){
+        if (tokenId==UNKNOWN_TOKEN) return ROOT;
+        while (true){
+            int child = this.getChild(state, tokenId);
+            if (child!=NONE) return child;
+            if (state==ROOT) return ROOT;
+            state = this.getInt(this.failure, state);
+        }
+    }
+
+    private int getChild(int state, int tokenId){
+        int low = this.getInt(this.childStart, state);
+        int high = this.getInt(this.childStart, state+1)-1;
+        while (low<=high){
+            int middle = (low+high) >>> 1;
+            int token = this.getInt(this.childTokens, middle);
+            if (token<tokenId){
+                low = middle+1;
+            }else if (token>tokenId){
+                high = middle-1;
+            }else{
+                return this.getInt(this.childStates, middle);
+            }
+        }
+        return NONE;
+    }
+
+    @Override
+    public int getOutput(int state){
+        return this.getInt(this.output, state);
+    }
+
+    @Override
+    public int getFailure(int state){
+        return this.getInt(this.failure, state);
+    }
+
+    @Override
+    public int getDepth(int state){
+        return this.getInt(this.depth, state);
+    }
+
+    @Override
+    public List<DictionaryEntry> getMeanings(int state){
+        List<DictionaryEntry> results = this.meanings.get(state);
+        if (results==null){
+            results = this.meanings.computeIfAbsent(state, this::decodeMeanings);
+        }
+        return results;
+    }
+
+    private List<DictionaryEntry> decodeMeanings(int state){
+        int from = this.getInt(this.meaningStart, state);
+        int to = this.getInt(this.meaningStart, state+1);
+        List<DictionaryEntry> results = new ArrayList<>(to-from);
+        for (int i=from; i<to; i++){
+            results.add(this.getEntry(this.getInt(this.meaningRefs, i)));
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    @Override
+    public int size(){
+        return this.stateCount;
+    }
+
+    private DictionaryEntry getEntry(int index){
+        DictionaryEntry entry = new DictionaryEntry(this.getString(this.getInt(this.entrySurface, index)),
+                this.getString(this.getInt(this.entryType, index)));
+        int tagCount = this.getInt(this.entryTagCount, index);
+        if (tagCount>=0){
+            int tagStart = this.getInt(this.entryTagStart, index);
+            entry.tags = new ArrayList<>(tagCount);
+            for (int i=0; i<tagCount; i++){
+                entry.tags.add(this.getString(this.getInt(this.tagRefs, tagStart+i)));
+            }
+        }
+        return entry;
+    }
+
+    private int getInt(int section, int index){
+        return this.buffer.getInt(section + 4*index);
+    }
+
+    private String getString(int id){
+        if (id==-1) return null;
+        int from = this.getInt(this.stringStart, id);
+        int to = this.getInt(this.stringStart, id+1);
+        char[] result = new char[to-from];
+        for (int i=0; i<result.length; i++){
+            result[i] = this.buffer.getChar(this.chars + 2*(from+i));
+        }
+        return new String(result);
+    }
+
+    private boolean stringEquals(int id, String s){
+        int from = this.getInt(this.stringStart, id);
+        int to = this.getInt(this.stringStart, id+1);
+        if (to-from!=s.length()) return false;
+        for (int i=0; i<s.length(); i++){
+            if (this.buffer.getChar(this.chars + 2*(from+i))!=s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a compiled token automaton and all its entries to a snapshot file.
+     * @param automaton The automaton of a WhitelistAnnotator.
+     * @param ignoreCase Whether the dictionary was built case-insensitively.
+     * @param fileName The file to write.
+     */
+    public static void write(TokenAutomaton<DictionaryEntry> automaton, boolean ignoreCase, String fileName){
+        write(automaton, ignoreCase, false, fileName);
+    }
+
+    /**
+     * @param ignoreAccents Whether the dictionary was built without diacritics.
+     */
+    public static void write(TokenAutomaton<DictionaryEntry> automaton, boolean ignoreCase, boolean ignoreAccents,
+                             String fileName){
+        int stateCount = automaton.size();
+
+        // strings: tokens come first, so that a token's local ID equals its string ID.
+        HashMap<String,Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        HashMap<Integer,Integer> localTokenIds = new HashMap<>();
+        for (int state=0; state<stateCount; state++){
+            for (int i=0; i<automaton.getChildCount(state); i++){
+                int token = automaton.getChildToken(state, i);
+                if (!localTokenIds.containsKey(token)){
+                    localTokenIds.put(token, addString(automaton.getTokenSymbols().getToken(token), stringIds, strings));
+                }
+            }
+        }
+        int tokenCount = strings.size();
+
+        int childCount = 0;
+        for (int state=0; state<stateCount; state++) childCount += automaton.getChildCount(state);
+        int[] childStarts = new int[stateCount+1];
+        int[] tokens = new int[childCount];
+        int[] targets = new int[childCount];
+        int position = 0;
+        for (int state=0; state<stateCount; state++){
+            childStarts[state] = position;
+            long[] sorted = new long[automaton.getChildCount(state)];
+            for (int i=0; i<sorted.length; i++){
+                long token = localTokenIds.get(automaton.getChildToken(state, i));
+                sorted[i] = (token << 32) | automaton.getChildState(state, i);
+            }
+            Arrays.sort(sorted);
+            for (long pair : sorted){
+                tokens[position] = (int)(pair >>> 32);
+                targets[position] = (int)pair;
+                position++;
+            }
+        }
+        childStarts[stateCount] = position;
+
+        HashMap<DictionaryEntry,Integer> entryIds = new HashMap<>();
+        List<DictionaryEntry> entries = new ArrayList<>();
+        int[] meaningStarts = new int[stateCount+1];
+        List<Integer> meaningRefs = new ArrayList<>();
+        for (int state=0; state<stateCount; state++){
+            meaningStarts[state] = meaningRefs.size();
+            for (DictionaryEntry entry : automaton.getMeanings(state)){
+                Integer id = entryIds.get(entry);
+                if (id==null){
+                    id = entries.size();
+                    entryIds.put(entry, id);
+                    entries.add(entry);
+                }
+                meaningRefs.add(id);
+            }
+        }
+        meaningStarts[stateCount] = meaningRefs.size();
+
+        int[] surfaces = new int[entries.size()];
+        int[] types = new int[entries.size()];
+        int[] tagStarts = new int[entries.size()];
+        int[] tagCounts = new int[entries.size()];
+        List<Integer> tagRefs = new ArrayList<>();
+        for (int i=0; i<entries.size(); i++){
+            DictionaryEntry entry = entries.get(i);
+            surfaces[i] = addString(entry.surface, stringIds, strings);
+            types[i] = addString(entry.type, stringIds, strings);
+            tagStarts[i] = tagRefs.size();
+            tagCounts[i] = entry.tags==null ? -1 : entry.tags.size();
+            if (entry.tags!=null){
+                for (String tag : entry.tags){
+                    tagRefs.add(addString(tag, stringIds, strings));
+                }
+            }
+        }
+
+        int hashCapacity = 1;
+        while (hashCapacity < 2*tokenCount+1) hashCapacity *= 2;
+        int[] hashSlots = new int[hashCapacity];
+        Arrays.fill(hashSlots, -1);
+        for (int id=0; id<tokenCount; id++){
+            int slot = strings.get(id).hashCode() & (hashCapacity-1);
+            while (hashSlots[slot]!=-1) slot = (slot+1) & (hashCapacity-1);
+            hashSlots[slot] = id;
+        }
+
+        int totalChars = 0;
+        for (String s : strings) totalChars += s.length();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt((ignoreCase ? IGNORE_CASE : 0) | (ignoreAccents ? IGNORE_ACCENTS : 0));
+            out.writeInt(strings.size());
+            out.writeInt(totalChars);
+            out.writeInt(hashCapacity);
+            out.writeInt(stateCount);
+            out.writeInt(childCount);
+            out.writeInt(meaningRefs.size());
+            out.writeInt(entries.size());
+            out.writeInt(tagRefs.size());
+            out.writeInt(0); // reserved
+            out.writeInt(0); // reserved
+
+            int offset = 0;
+            for (String s : strings){
+                out.writeInt(offset);
+                offset += s.length();
+            }
+            out.writeInt(offset);
+            for (String s : strings){
+                out.writeChars(s);
+            }
+            writeInts(out, hashSlots);
+            writeInts(out, childStarts);
+            writeInts(out, tokens);
+            writeInts(out, targets);
+            for (int state=0; state<stateCount; state++) out.writeInt(automaton.getFailure(state));
+            for (int state=0; state<stateCount; state++) out.writeInt(automaton.getOutput(state));
+            for (int state=0; state<stateCount; state++) out.writeInt(automaton.getDepth(state));
+            writeInts(out, meaningStarts);
+            for (int ref : meaningRefs) out.writeInt(ref);
+            writeInts(out, surfaces);
+            writeInts(out, types);
+            writeInts(out, tagStarts);
+            writeInts(out, tagCounts);
+            for (int ref : tagRefs) out.writeInt(ref);
+        }catch(IOException e){
+            throw new AslException(e);
+        }
+    }
+
+    private static int addString(String s, HashMap<String,Integer> stringIds, List<String> strings){
+        if (s==null) return -1;
+        Integer id = stringIds.get(s);
+        if (id==null){
+            id = strings.size();
+            stringIds.put(s, id);
+            strings.add(s);
+        }
+        return id;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException{
+        for (int value : values) out.writeInt(value);
+    }
+}
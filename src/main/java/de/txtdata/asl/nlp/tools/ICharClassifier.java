@@ -0,0 +1,44 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+/**
+ * Classifies many characters at a time into bit masks, one per character class.
+ * Implemented by CharClassifier, and by VectorCharClassifier, which uses the Vector API of the JDK if the project was
+ * built with the "vector" profile and the JVM runs with --add-modules jdk.incubator.vector. Both give identical results.
+ */
+public interface ICharClassifier {
+
+    // the character classes; a character can be in several classes.
+    int WHITESPACE  = 0;  // Character.isWhitespace() or a space separator
+    int PUNCTUATION = 1;  // one of the punctuation characters of the classifier, e.g. Word.getPunctuations()
+    int UPPERCASE   = 2;  // Character.isUpperCase()
+    int LOWERCASE   = 3;  // Character.isLowerCase()
+    int DIGIT       = 4;  // Character.isDigit()
+    int BLANK       = 5;  // at most ' ', i.e. removed by String.trim()
+    int CLASSES     = 6;
+
+    /**
+     * Classifies the characters text[from] to text[to-1], at most 64 of them.
+     * @param masks Array of length CLASSES; afterwards, bit i of masks[c] is set if text[from+i] is in class c.
+     */
+    void classify(char[] text, int from, int to, long[] masks);
+
+    String getPunctuations();
+}
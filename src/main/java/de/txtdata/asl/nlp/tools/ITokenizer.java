@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import de.txtdata.asl.nlp.models.Span;
+import de.txtdata.asl.nlp.models.Word;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a sentence into tokens. Implemented by OpenNLPTokenizer and RuleBasedTokenizer.
+ * Implementations must be thread-safe.
+ */
+public interface ITokenizer {
+
+    List<String> getTokens(String sentence);
+
+    /**
+     * @return The tokens of the sentence, with offsets relative to the sentence as it was given.
+     */
+    List<Span> getTokensAsSpans(String sentence);
+
+    default List<Word> getTokensAsWords(String sentence){
+        List<Word> results = new ArrayList<>();
+        for (Span span: this.getTokensAsSpans(sentence)){
+            results.add(new Word(span.getSurface(), span.getStarts(), span.getEnds()));
+        }
+        return results;
+    }
+
+    /**
+     * Releases resources, e.g. models. The tokenizer must not be used afterwards.
+     */
+    default void close(){
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import de.txtdata.asl.nlp.models.Language;
+import de.txtdata.asl.util.misc.AslException;
+import opennlp.tools.cmdline.postag.POSModelLoader;
+import opennlp.tools.cmdline.tokenizer.TokenizerModelLoader;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * JVM-wide registry of OpenNLP models, so that each model file is loaded only once, however many pipelines use it.
+ * Models are identified by language, kind (e.g. "token") and file. A model is loaded when it is first acquired, and
+ * dropped from the registry when everyone who acquired it has released it again.
+ * OpenNLP models are thread-safe; the tools that use them (TokenizerME etc.) are not, see ToolPool.
+ */
+public class ModelRegistry {
+
+    public static final String SENTENCE_MODEL  = "sent";
+    public static final String TOKENIZER_MODEL = "token";
+    public static final String POS_MODEL       = "pos-maxent";
+
+    // both guarded by the lock of entries.
+    private static final Map<String, Entry> entries = new HashMap<>();
+    private static final Map<Object, Entry> entriesByModel = new IdentityHashMap<>();
+
+    private ModelRegistry(){}
+
+    public static SentenceModel getSentenceModel(Language language, String modelDirectory){
+        return acquire(language, SENTENCE_MODEL, modelDirectory, file -> {
+            try (InputStream in = new FileInputStream(file)){
+                return new SentenceModel(in);
+            }catch(IOException e){
+                throw new AslException(e);
+            }
+        });
+    }
+
+    public static TokenizerModel getTokenizerModel(Language language, String modelDirectory){
+        return acquire(language, TOKENIZER_MODEL, modelDirectory, file -> new TokenizerModelLoader().load(file));
+    }
+
+    public static POSModel getPOSModel(Language language, String modelDirectory){
+        return acquire(language, POS_MODEL, modelDirectory, file -> new POSModelLoader().load(file));
+    }
+
+    /**
+     * @param kind The kind of model, which is also the suffix of its file name, e.g. "token" for "en-token.bin".
+     *             All callers must load the same type of model for the same kind.
+     * @param loader Loads the model from its file, if it hasn't been loaded yet.
+     * @return The shared model. Must be given back with release() when it is no longer needed.
+     */
+    public static <M> M acquire(Language language, String kind, String modelDirectory, Function<File, M> loader){
+        File file = getFile(language, kind, modelDirectory);
+        String key = language.getCode() + "|" + kind + "|" + file.getPath();
+        Entry entry;
+        synchronized (entries){
+            entry = entries.computeIfAbsent(key, Entry::new);
+            entry.references++;
+        }
+        try{
+            M model = entry.load(file, loader);
+            synchronized (entries){
+                entriesByModel.put(model, entry);
+            }
+            return model;
+        }catch(RuntimeException e){
+            release(entry);
+            throw e;
+        }
+    }
+
+    /**
+     * Releases a model that was acquired before. Once all users have released it, the next acquire() loads it again.
+     */
+    public static void release(Object model){
+        if (model==null) return;
+        Entry entry;
+        synchronized (entries){
+            entry = entriesByModel.get(model);
+        }
+        if (entry!=null) release(entry);
+    }
+
+    /**
+     * @return The number of users of the given model, 0 if it is not in the registry.
+     */
+    public static int getReferenceCount(Object model){
+        synchronized (entries){
+            Entry entry = entriesByModel.get(model);
+            return entry==null ? 0 : entry.references;
+        }
+    }
+
+    /**
+     * @return The number of models in the registry.
+     */
+    public static int size(){
+        synchronized (entries){
+            return entries.size();
+        }
+    }
+
+    private static void release(Entry entry){
+        synchronized (entries){
+            entry.references--;
+            if (entry.references<=0 && entries.get(entry.key)==entry){
+                entries.remove(entry.key);
+                if (entry.model!=null) entriesByModel.remove(entry.model);
+            }
+        }
+    }
+
+    private static File getFile(Language language, String kind, String modelDirectory){
+        File file = new File(modelDirectory + "/" + language.getCode() + "-" + kind + ".bin");
+        try{
+            return file.getCanonicalFile();
+        }catch(IOException e){
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private int references = 0;
+        private volatile Object model;
+
+        private Entry(String key){
+            this.key = key;
+        }
+
+        // the key of an entry includes the kind of model, and each kind is always loaded as the same type.
+        @SuppressWarnings("unchecked")
+        private synchronized <M> M load(File file, Function<File, M> loader){
+            if (this.model==null){
+                this.model = loader.apply(file);
+            }
+            return (M)this.model;
+        }
+    }
+}
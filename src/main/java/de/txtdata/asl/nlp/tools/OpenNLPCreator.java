@@ -25,6 +25,7 @@ import de.txtdata.asl.nlp.models.TextUnit;
 import de.txtdata.asl.nlp.models.Word;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -35,7 +36,7 @@ public class OpenNLPCreator extends AbstractCreator {
     public String modelDirectory;
     public boolean postProcess = false;
 
-    private OpenNLPTokenizer openNLPTokenizer;
+    private ITokenizer openNLPTokenizer;
     private OpenNLPTagger openNLPTagger;
 
     public OpenNLPCreator(Language language, String modelDirectory){
@@ -48,14 +49,18 @@ public class OpenNLPCreator extends AbstractCreator {
     }
 
     public void initialize(boolean runTagger){
-        this.openNLPTokenizer = new OpenNLPTokenizer(this.language, this.modelDirectory, false);
-        this.openNLPTokenizer.doPostProcess = this.postProcess;
+        OpenNLPTokenizer tokenizer = new OpenNLPTokenizer(this.language, this.modelDirectory, false);
+        tokenizer.doPostProcess = this.postProcess;
+        this.openNLPTokenizer = tokenizer;
         if (runTagger) {
             this.openNLPTagger = new OpenNLPTagger(this.language, this.modelDirectory);
         }
     }
 
-    public void setTokenizer(OpenNLPTokenizer openNLPTokenizer){
+    /**
+     * Replaces the tokenizer, e.g. with a RuleBasedTokenizer.
+     */
+    public void setTokenizer(ITokenizer openNLPTokenizer){
         this.openNLPTokenizer = openNLPTokenizer;
     }
 
@@ -63,7 +68,7 @@ public class OpenNLPCreator extends AbstractCreator {
         this.openNLPTagger = openNLPTagger;
     }
 
-    public OpenNLPTokenizer getTokenizer(){
+    public ITokenizer getTokenizer(){
         return this.openNLPTokenizer;
     }
 
@@ -95,6 +100,44 @@ public class OpenNLPCreator extends AbstractCreator {
     }
 
 
+    /**
+     * Creates TextUnits for many sentences at once. All sentences are tokenized first and then tagged in one batch, see
+     * OpenNLPTagger.getTaggedSentences().
+     * @param sentences The sentences, e.g. from OpenNLPSentenceSplitter.getSentencesAsSpans(). The offsets of the words
+     *                  are relative to the text the sentences were taken from.
+     */
+    public List<TextUnit> createAll(List<Span> sentences){
+        List<List<Span>> tokens = new ArrayList<>(sentences.size());
+        for (Span sentence : sentences){
+            tokens.add(openNLPTokenizer.getTokensAsSpans(sentence.getSurface()));
+        }
+        Word[][] tagged = null;
+        if (this.openNLPTagger!=null){
+            tagged = openNLPTagger.getTaggedSentences(tokens);
+        }
+        List<TextUnit> results = new ArrayList<>(sentences.size());
+        for (int i=0; i<sentences.size(); i++){
+            List<Word> words;
+            if (tagged!=null){
+                words = new ArrayList<>(Arrays.asList(tagged[i]));
+            }else{
+                words = new ArrayList<>();
+                for (Span span : tokens.get(i)){
+                    Word word = new Word(span.getSurface());
+                    word.setStarts(span.getStarts());
+                    word.setEnds(span.getEnds());
+                    words.add(word);
+                }
+            }
+            Span sentence = sentences.get(i);
+            if (sentence.getStarts()>0) this.applyOffset(words, sentence.getStarts());
+            TextUnit textPiece = new TextUnit(sentence.getSurface());
+            textPiece.setWords(words);
+            results.add(textPiece);
+        }
+        return results;
+    }
+
     private void applyOffset(List<Word> words, int offset){
         for (Word word : words){
             word.setStarts(word.getStarts()+offset);
@@ -24,13 +24,24 @@ import de.txtdata.asl.util.misc.AslException;
 import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.sentdetect.SentenceModel;
 
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Wrapper for OpenNLP sentence splitter.
+ * Large documents can be split from a Reader, which is read in windows, so memory use does not grow with the document.
+ * The model is shared with all other users via ModelRegistry; since SentenceDetectorME is not thread-safe, each call
+ * borrows an instance from a ToolPool.
  */
 public class OpenNLPSentenceSplitter{
 
@@ -38,7 +49,16 @@ public class OpenNLPSentenceSplitter{
     public String modelDirectory;
     public String knownAbbreviationsFile = null;
 
-    private SentenceDetectorME sentenceDetector;
+    // number of characters read from a Reader at a time, and length after which a sentence is cut off if no end is found.
+    public int windowSize = 65536;
+    public int maxSentenceLength = 1048576;
+
+    private static final TextNormalizer NORMALIZER = new TextNormalizer()
+            .replace('’', "'")
+            .replace('“', " ");
+
+    private SentenceModel sentenceModel;
+    private ToolPool<SentenceDetectorME> sentenceDetectors;
     private WordList knownAbbreviations;
 
     public OpenNLPSentenceSplitter(Language language, String modelDirectory){
@@ -54,10 +74,11 @@ public class OpenNLPSentenceSplitter{
         this.initialize();
     }
 
-   private void initialize(){
+    private void initialize(){
         try{
-            SentenceModel sentenceModel = new SentenceModel(new FileInputStream(this.modelDirectory+"/"+this.language.getCode()+"-sent.bin"));
-            sentenceDetector = new SentenceDetectorME(sentenceModel);
+            this.sentenceModel = ModelRegistry.getSentenceModel(this.language, this.modelDirectory);
+            this.sentenceDetectors = new ToolPool<>("opennlp.sentences." + this.language.getCode(),
+                    () -> new SentenceDetectorME(this.sentenceModel));
             if (this.knownAbbreviationsFile !=null){
                 this.knownAbbreviations = new WordList(this.knownAbbreviationsFile, false, "//");
             }
@@ -66,55 +87,182 @@ public class OpenNLPSentenceSplitter{
         }
     }
 
+    /**
+     * Gives the model back to the ModelRegistry. The sentence splitter must not be used afterwards.
+     */
+    public void close(){
+        this.sentenceDetectors.close();
+        ModelRegistry.release(this.sentenceModel);
+        this.sentenceModel = null;
+    }
+
     // Note: No post-processing is performed in this method.
     public List<String> getSentences(String text){
         if (text==null) return new ArrayList<>();
-        text = normalize(text);
-        String[] sentences = sentenceDetector.sentDetect(text);
+        String normalized = NORMALIZER.normalize(text).text;
+        String[] sentences = this.sentenceDetectors.apply(detector -> detector.sentDetect(normalized));
         return Arrays.asList(sentences);
     }
 
     public List<Span> getSentencesAsSpans(String text){
         List<Span> results = new ArrayList<>();
         if (text==null) return results;
-        text = normalize(text);
-        opennlp.tools.util.Span[]   spans     = sentenceDetector.sentPosDetect(text);
+        TextNormalizer.Normalized normalized = NORMALIZER.normalize(text);
+        opennlp.tools.util.Span[]   spans     = this.sentenceDetectors.apply(detector -> detector.sentPosDetect(normalized.text));
         for (opennlp.tools.util.Span oSpan : spans){
-            String surface = text.substring(oSpan.getStart(), oSpan.getEnd());
+            String surface = normalized.text.substring(oSpan.getStart(), oSpan.getEnd());
             Span span = new Span(surface, oSpan.getStart(), oSpan.getEnd());
             results.add(span);
         }
-        results = this.postProcess(results, text);
+        results = this.postProcess(results, normalized.text);
+        if (normalized.isChanged()){
+            for (Span span : results){
+                span.setEnds(normalized.getOriginalEnd(span.getEnds()));
+                span.setStarts(normalized.getOriginalStart(span.getStarts()));
+            }
+        }
         return results;
     }
 
+    /**
+     * Splits the text of a Reader into sentences while it is read. The text is read in windows of windowSize
+     * characters; only the last sentence of a window is held back, since it may continue in the next window.
+     * @return The sentences, with offsets relative to the start of the Reader. The Reader is not closed.
+     */
+    public Iterator<Span> getSentencesAsSpans(Reader reader){
+        return new SentenceIterator(reader);
+    }
+
+    public Stream<Span> streamSentences(Reader reader){
+        Spliterator<Span> spliterator = Spliterators.spliteratorUnknownSize(this.getSentencesAsSpans(reader),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    // merges each sentence that ends with a known abbreviation with the sentence after it.
     private List<Span> postProcess(List<Span> spans, String text){
-        if (this.knownAbbreviations==null) return spans;
-        for (int i=0; i<spans.size(); i++){
-            String surface = spans.get(i).getSurface();
-            if (surface==null) continue;
-            int index = surface.lastIndexOf(" ");
-            if (index!=-1){
-                String lastWord = surface.substring(index+1,surface.length());
-                boolean onList = this.knownAbbreviations.isOnList(lastWord);
-                if (onList && spans.size()-1>i){
-                    int starts = spans.get(i).getStarts();
-                    int ends = spans.get(i + 1).getEnds();
-                    String sentence = text.substring(starts,ends);
-                    spans.remove(i);
-                    spans.remove(i);
-                    spans.add(i,new Span(sentence,starts,ends));
-                    i=i-1;
-                }
+        if (this.knownAbbreviations==null || spans.size()<=1) return spans;
+        List<Span> results = new ArrayList<>(spans.size());
+        Span current = spans.get(0);
+        for (int i=1; i<spans.size(); i++){
+            Span next = spans.get(i);
+            if (this.endsWithAbbreviation(current)){
+                int starts = current.getStarts();
+                int ends = next.getEnds();
+                current = new Span(text.substring(starts, ends), starts, ends);
+            }else{
+                results.add(current);
+                current = next;
             }
         }
-        return spans;
+        results.add(current);
+        return results;
+    }
+
+    private boolean endsWithAbbreviation(Span span){
+        String surface = span.getSurface();
+        if (surface==null) return false;
+        int index = surface.lastIndexOf(" ");
+        if (index==-1) return false;
+        return this.knownAbbreviations.isOnList(surface.substring(index+1));
     }
 
-    private String normalize(String text){
-        text = text.replaceAll("’","'");
-        text = text.replaceAll("“"," ");
-        return text;
+    private static boolean hasWhitespace(String text, int from){
+        for (int i=from; i<text.length(); i++){
+            if (Character.isWhitespace(text.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private class SentenceIterator implements Iterator<Span> {
+
+        private final Reader reader;
+        private final char[] window = new char[windowSize];
+        // text that has been read, and its offset in the input. The buffer starts with the last sentence that has been
+        // returned (its first 'context' characters), since the detector decides on sentence ends based on what precedes.
+        private final StringBuilder buffer = new StringBuilder();
+        private int bufferStart = 0;
+        private int context = 0;
+        private boolean endOfInput = false;
+        private boolean finished = false;
+        private final ArrayDeque<Span> ready = new ArrayDeque<>();
+
+        private SentenceIterator(Reader reader){
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext(){
+            while (this.ready.isEmpty() && !this.finished){
+                this.readWindow();
+                this.detect();
+            }
+            return !this.ready.isEmpty();
+        }
+
+        @Override
+        public Span next(){
+            if (!this.hasNext()) throw new NoSuchElementException();
+            return this.ready.poll();
+        }
+
+        private void readWindow(){
+            try{
+                int read = 0;
+                while (read<this.window.length){
+                    int n = this.reader.read(this.window, read, this.window.length-read);
+                    if (n==-1){
+                        this.endOfInput = true;
+                        break;
+                    }
+                    read += n;
+                }
+                this.buffer.append(this.window, 0, read);
+            }catch(IOException e){
+                throw new AslException(e);
+            }
+        }
+
+        private void detect(){
+            TextNormalizer.Normalized normalized = NORMALIZER.normalize(this.buffer.toString());
+            String text = normalized.text;
+            int contextEnd = normalized.getNormalizedPosition(this.context);
+            opennlp.tools.util.Span[] oSpans = sentenceDetectors.apply(detector -> detector.sentPosDetect(text));
+            List<Span> spans = new ArrayList<>(oSpans.length);
+            for (opennlp.tools.util.Span oSpan : oSpans){
+                int starts = Math.max(oSpan.getStart(), contextEnd);
+                while (starts<oSpan.getEnd() && Character.isWhitespace(text.charAt(starts))) starts++;
+                if (starts>=oSpan.getEnd()) continue;
+                spans.add(new Span(text.substring(starts, oSpan.getEnd()), starts, oSpan.getEnd()));
+            }
+            spans = postProcess(spans, text);
+            int complete = this.endOfInput ? spans.size() : spans.size()-1;
+            // the detector also looks at the token after a sentence end, so that token must have been read completely.
+            while (complete>0 && complete<spans.size() && !hasWhitespace(text, spans.get(complete).getStarts())) complete--;
+            if (complete<=0 && !this.endOfInput){
+                if (this.buffer.length()-this.context<maxSentenceLength) return;
+                complete = spans.size();
+            }
+            this.finished = this.endOfInput;
+            if (complete==0){
+                // nothing but whitespace after the context
+                this.bufferStart += this.buffer.length();
+                this.buffer.setLength(0);
+                this.context = 0;
+                return;
+            }
+            int consumed = complete==spans.size() ? this.buffer.length() : normalized.getOriginalStart(spans.get(complete).getStarts());
+            int keep = normalized.getOriginalStart(spans.get(complete-1).getStarts());
+            for (int i=0; i<complete; i++){
+                Span span = spans.get(i);
+                span.setEnds(this.bufferStart + normalized.getOriginalEnd(span.getEnds()));
+                span.setStarts(this.bufferStart + normalized.getOriginalStart(span.getStarts()));
+                this.ready.add(span);
+            }
+            this.buffer.delete(0, keep);
+            this.bufferStart += keep;
+            this.context = consumed - keep;
+        }
     }
 
 }
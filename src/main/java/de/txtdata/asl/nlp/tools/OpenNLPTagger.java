@@ -21,52 +21,184 @@ import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.Span;
 import de.txtdata.asl.nlp.models.Word;
 import de.txtdata.asl.util.misc.AslException;
-import opennlp.tools.cmdline.postag.POSModelLoader;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
 
-import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Wrapper for OpenNLP tagger.
+ * The model is shared with all other users via ModelRegistry; since POSTaggerME is not thread-safe, each call borrows
+ * an instance from a ToolPool, so the tagger can be used by several threads at the same time.
+ * Optionally, the output of the tagger is kept in a TaggerCache.
  */
 public class OpenNLPTagger {
 
-    public static POSTaggerME tagger;
+    private POSModel posModel;
+    private ToolPool<POSTaggerME> taggers;
+    // threads that help the calling thread in getTaggedSentences(), null if the pool has only one instance.
+    private ExecutorService workers;
+    private volatile TaggerCache cache;
 
     public OpenNLPTagger(Language language, String modelDirectory){
+        this(language, modelDirectory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param poolSize Maximum number of threads that can tag at the same time.
+     */
+    public OpenNLPTagger(Language language, String modelDirectory, int poolSize){
         try{
-            POSModel posModel = new POSModelLoader().load(new File(modelDirectory+"/"+language.getCode()+"-pos-maxent.bin"));
-            tagger = new POSTaggerME(posModel);
+            this.posModel = ModelRegistry.getPOSModel(language, modelDirectory);
         }catch(Exception e){
             throw new AslException(e);
         }
+        this.taggers = new ToolPool<>("opennlp.tagger." + language.getCode(), poolSize,
+                () -> new POSTaggerME(this.posModel));
+        if (poolSize>1){
+            String threadName = "OpenNLPTagger-" + language.getCode();
+            this.workers = Executors.newFixedThreadPool(poolSize-1, runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gives the model back to the ModelRegistry. The tagger must not be used afterwards.
+     */
+    public void close(){
+        if (this.workers!=null) this.workers.shutdownNow();
+        this.taggers.close();
+        ModelRegistry.release(this.posModel);
+        this.posModel = null;
+    }
+
+    /**
+     * Puts a cache in front of the tagger, so that sentences that have been tagged before are not tagged again.
+     * The same cache can be shared by several taggers that use the same model, so a replaced cache is not closed.
+     * @param cache The cache, or null to switch caching off.
+     */
+    public void setCache(TaggerCache cache){
+        this.cache = cache;
+    }
+
+    public TaggerCache getCache(){
+        return this.cache;
     }
 
     public List<Word> getTaggedWords(List<Span> spans){
-        List<Word> results = new ArrayList<>();
+        String[] tokenized = getSurfaces(spans);
+        TaggerCache cache = this.cache;
+        String[] tagged = cache!=null ? cache.get(tokenized) : null;
+        if (tagged==null){
+            tagged = this.taggers.apply(tagger -> this.tag(tagger, tokenized, cache));
+        }
+        return new ArrayList<>(Arrays.asList(createWords(spans, tokenized, tagged)));
+    }
+
+    /**
+     * Tags many sentences in one call. The sentences are distributed over the instances of the pool, each of which tags
+     * every n-th sentence, so that long and short sentences are spread evenly. The calling thread tags one share, the
+     * other shares are tagged by threads of the tagger, so that waiting for an instance never blocks a shared pool.
+     * Sentences that are in the cache are taken from there first; only the others are given to the taggers.
+     * @param sentences The tokens of each sentence.
+     * @return The tagged words of each sentence, in the order of the input.
+     */
+    public Word[][] getTaggedSentences(List<List<Span>> sentences){
+        Word[][] results = new Word[sentences.size()][];
+        String[][] tokenized = new String[sentences.size()][];
+        int[] untagged = new int[sentences.size()];
+        int count = 0;
+        TaggerCache cache = this.cache;
+        for (int i=0; i<sentences.size(); i++){
+            tokenized[i] = getSurfaces(sentences.get(i));
+            String[] tagged = cache!=null ? cache.get(tokenized[i]) : null;
+            if (tagged!=null){
+                results[i] = createWords(sentences.get(i), tokenized[i], tagged);
+            }else{
+                untagged[count++] = i;
+            }
+        }
+        int untaggedCount = count;
+        int workers = Math.min(this.taggers.getMaxSize(), untaggedCount);
+        if (workers==0) return results;
+        if (workers==1){
+            this.taggers.apply(tagger -> this.tag(tagger, sentences, tokenized, results, untagged, untaggedCount, 0, 1));
+            return results;
+        }
+        List<Future<Word[][]>> shares = new ArrayList<>();
+        for (int worker=1; worker<workers; worker++){
+            int first = worker;
+            shares.add(this.workers.submit(() -> this.taggers.apply(tagger ->
+                    this.tag(tagger, sentences, tokenized, results, untagged, untaggedCount, first, workers))));
+        }
+        try{
+            this.taggers.apply(tagger -> this.tag(tagger, sentences, tokenized, results, untagged, untaggedCount, 0, workers));
+            for (Future<Word[][]> share : shares){
+                share.get();
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AslException(e);
+        }catch(ExecutionException e){
+            throw new AslException(e.getCause());
+        }finally{
+            for (Future<Word[][]> share : shares){
+                share.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Tags every step-th of the untagged sentences, beginning with the first-th.
+     */
+    private Word[][] tag(POSTaggerME tagger, List<List<Span>> sentences, String[][] tokenized, Word[][] results,
+                         int[] untagged, int untaggedCount, int first, int step){
+        TaggerCache cache = this.cache;
+        for (int j=first; j<untaggedCount; j+=step){
+            int i = untagged[j];
+            results[i] = createWords(sentences.get(i), tokenized[i], this.tag(tagger, tokenized[i], cache));
+        }
+        return results;
+    }
+
+    private String[] tag(POSTaggerME tagger, String[] tokenized, TaggerCache cache){
+        String[] tagged = tagger.tag(tokenized);
+        if (cache!=null) cache.put(tokenized, tagged);
+        return tagged;
+    }
+
+    private static String[] getSurfaces(List<Span> spans){
         String[] tokenized = new String[spans.size()];
         int i=0;
         for (Span span : spans){
             tokenized[i] = span.getSurface();
             i++;
         }
-        String[] tagged = tagger.tag(tokenized);
+        return tokenized;
+    }
+
+    private static Word[] createWords(List<Span> spans, String[] tokenized, String[] tagged){
         if (tokenized.length!=tagged.length){
             System.out.println("Warning! OpenNLPTagger: Tokens and annotations don't match.");
         }
-        int j=0;
-        for (String token : tokenized){
-            String tag = tagged[j];
+        Word[] results = new Word[tokenized.length];
+        for (int j=0; j<tokenized.length; j++){
             Span span = spans.get(j);
-            Word word = new Word(token);
-            word.setPOS(tag);
+            Word word = new Word(tokenized[j]);
+            word.setPOS(tagged[j]);
             word.setStarts(span.getStarts());
             word.setEnds(span.getEnds());
-            results.add(word);
-            j++;
+            results[j] = word;
         }
         return results;
     }
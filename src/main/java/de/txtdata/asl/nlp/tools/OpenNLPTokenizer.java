@@ -21,19 +21,19 @@ import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.Span;
 import de.txtdata.asl.nlp.models.Word;
 import de.txtdata.asl.util.misc.AslException;
-import opennlp.tools.cmdline.tokenizer.TokenizerModelLoader;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 /**
  * Wrapper for OpenNLP tokenizer.
+ * The model is shared with all other users via ModelRegistry; since TokenizerME is not thread-safe, each call borrows
+ * an instance from a ToolPool, so that several threads can tokenize at the same time.
  */
-public class OpenNLPTokenizer{
+public class OpenNLPTokenizer implements ITokenizer {
 
     public Language language;
     public String modelDirectory;
@@ -43,47 +43,70 @@ public class OpenNLPTokenizer{
 
     public String tokensToCutOff = "\"'«»-";
 
-    private TokenizerME tokenizer;
+    static final TextNormalizer NORMALIZER = new TextNormalizer()
+            .replace('’', "'")
+            .replace('“', "");
+
+    private TokenizerModel tokenizerModel;
+    private ToolPool<TokenizerME> tokenizers;
 
     public OpenNLPTokenizer(Language language, String modelDirectory){
         this(language, modelDirectory, false);
     }
 
     public OpenNLPTokenizer(Language language, String modelDirectory, boolean includeWhitespace){
+        this(language, modelDirectory, includeWhitespace, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param poolSize Maximum number of threads that can tokenize at the same time.
+     */
+    public OpenNLPTokenizer(Language language, String modelDirectory, boolean includeWhitespace, int poolSize){
         this.language = language;
         this.modelDirectory = modelDirectory;
         this.includeWhitespace = includeWhitespace;
-        this.initialize();
+        this.initialize(poolSize);
     }
 
-    private void initialize(){
+    private void initialize(int poolSize){
         try{
-            TokenizerModel tokenizerModel = new TokenizerModelLoader().load(new File(this.modelDirectory+"/"+ this.language.getCode()+"-token.bin"));
-            tokenizer = new TokenizerME(tokenizerModel);
+            this.tokenizerModel = ModelRegistry.getTokenizerModel(this.language, this.modelDirectory);
         }catch(Exception e){
             throw new AslException(e);
         }
+        this.tokenizers = new ToolPool<>("opennlp.tokenizer." + this.language.getCode(), poolSize,
+                () -> new TokenizerME(this.tokenizerModel));
     }
 
+    /**
+     * Gives the model back to the ModelRegistry. The tokenizer must not be used afterwards.
+     */
+    @Override
+    public void close(){
+        this.tokenizers.close();
+        ModelRegistry.release(this.tokenizerModel);
+        this.tokenizerModel = null;
+    }
+
+    @Override
     public List<String> getTokens(String sentence){
-        sentence = normalize(sentence);
-        String[] tokenized;
-        synchronized (this) {
-            tokenized = tokenizer.tokenize(sentence);
-        }
+        String normalized = NORMALIZER.normalize(sentence).text;
+        String[] tokenized = this.tokenizers.apply(tokenizer -> tokenizer.tokenize(normalized));
         if (lowercaseAll) this.lowercaseTokens(tokenized);
         return new ArrayList<>(Arrays.asList(tokenized));
     }
 
+    /**
+     * @return The tokens of the sentence. Their surfaces are normalized (e.g. ’ becomes '), but their offsets refer to
+     * the sentence as it was given.
+     */
+    @Override
     public List<Span> getTokensAsSpans(String sentence){
         List<Span> results = new ArrayList<>();
-        sentence = normalize(sentence);
-        opennlp.tools.util.Span[] spans;
-        synchronized (this) {
-            spans = tokenizer.tokenizePos(sentence);
-        }
+        TextNormalizer.Normalized normalized = NORMALIZER.normalize(sentence);
+        opennlp.tools.util.Span[] spans = this.tokenizers.apply(tokenizer -> tokenizer.tokenizePos(normalized.text));
         for (opennlp.tools.util.Span oSpan : spans){
-            String surface = sentence.substring(oSpan.getStart(), oSpan.getEnd());
+            String surface = normalized.text.substring(oSpan.getStart(), oSpan.getEnd());
             if (lowercaseAll) surface = surface.toLowerCase();
             Span span = new Span(surface, oSpan.getStart(), oSpan.getEnd());
             results.add(span);
@@ -91,9 +114,16 @@ public class OpenNLPTokenizer{
         if (doPostProcess){
             results = this.postProcess(results);
         }
+        if (normalized.isChanged()){
+            for (Span span : results){
+                span.setEnds(normalized.getOriginalEnd(span.getEnds()));
+                span.setStarts(normalized.getOriginalStart(span.getStarts()));
+            }
+        }
         return results;
     }
 
+    @Override
     public List<Word> getTokensAsWords(String sentence){
         List<Word> results = new ArrayList<>();
         for (Span span: this.getTokensAsSpans(sentence)){
@@ -143,10 +173,4 @@ public class OpenNLPTokenizer{
         }
         return results;
     }
-
-    private String normalize(String text){
-        text = text.replaceAll("’","'");
-        text = text.replaceAll("“","");
-        return text;
-    }
 }
@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import de.txtdata.asl.nlp.models.Span;
+import de.txtdata.asl.nlp.models.Word;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fast tokenizer that does not need a model, e.g. for pipelines that only look up whitelisted terms.
+ * Text is split at whitespace; punctuation (by default Word.getPunctuations()) is split off the start and end of each
+ * word, like OpenNLPTokenizer.postProcessApostrophes() does, and inside words unless it joins two letters or digits
+ * (e.g. "3.5", "well-known"). English clitics are split off as by the OpenNLP English model ("do" "n't", "John" "'s").
+ * The text is normalized like by OpenNLPTokenizer, and offsets refer to the sentence as it was given.
+ */
+public class RuleBasedTokenizer implements ITokenizer {
+
+    public boolean lowercaseAll = false;
+
+    private static final byte OTHER       = 0;
+    private static final byte WHITESPACE  = 1;
+    private static final byte PUNCTUATION = 2;
+    private static final byte LETTER      = 3;
+    private static final byte DIGIT       = 4;
+
+    private static final String[] CLITICS = {"s", "re", "ll", "ve", "d", "m"};
+
+    // character classes, indexed by character; characters beyond the table are classified with Character methods.
+    private final byte[] classes;
+
+    public RuleBasedTokenizer(){
+        this(Word.getPunctuations());
+    }
+
+    /**
+     * @param punctuations The characters that are split off as tokens of their own.
+     */
+    public RuleBasedTokenizer(String punctuations){
+        int size = 256;
+        for (char c : punctuations.toCharArray()){
+            size = Math.max(size, c+1);
+        }
+        this.classes = new byte[size];
+        for (int c=0; c<size; c++){
+            this.classes[c] = classify((char)c);
+        }
+        for (char c : punctuations.toCharArray()){
+            this.classes[c] = PUNCTUATION;
+        }
+    }
+
+    @Override
+    public List<String> getTokens(String sentence){
+        List<String> results = new ArrayList<>();
+        for (Span span : this.getTokensAsSpans(sentence)){
+            results.add(span.getSurface());
+        }
+        return results;
+    }
+
+    @Override
+    public List<Span> getTokensAsSpans(String sentence){
+        List<Span> results = new ArrayList<>();
+        TextNormalizer.Normalized normalized = OpenNLPTokenizer.NORMALIZER.normalize(sentence);
+        String text = normalized.text;
+        int length = text.length();
+        int i = 0;
+        while (i<length){
+            if (this.charClass(text.charAt(i))==WHITESPACE){
+                i++;
+                continue;
+            }
+            int end = i+1;
+            while (end<length && this.charClass(text.charAt(end))!=WHITESPACE) end++;
+            this.split(text, i, end, results);
+            i = end;
+        }
+        for (Span span : results){
+            if (this.lowercaseAll) span.setSurface(span.getSurface().toLowerCase());
+            if (normalized.isChanged()){
+                span.setEnds(normalized.getOriginalEnd(span.getEnds()));
+                span.setStarts(normalized.getOriginalStart(span.getStarts()));
+            }
+        }
+        return results;
+    }
+
+    // splits a sequence of non-whitespace characters into tokens.
+    private void split(String text, int start, int end, List<Span> results){
+        while (start<end && this.charClass(text.charAt(start))==PUNCTUATION && !this.isPrefix(text, start, end)){
+            add(text, start, start+1, results);
+            start++;
+        }
+        int coreEnd = end;
+        while (coreEnd>start && this.charClass(text.charAt(coreEnd-1))==PUNCTUATION && !this.isAbbreviation(text, start, coreEnd)){
+            coreEnd--;
+        }
+        int tokenStart = start;
+        int from = start<coreEnd && this.isPrefix(text, start, coreEnd) ? start+1 : start;
+        int to = coreEnd>start && this.isAbbreviation(text, start, coreEnd) ? coreEnd-1 : coreEnd;
+        for (int i=from; i<to; i++){
+            if (this.charClass(text.charAt(i))==PUNCTUATION && !this.joins(text, i, start, coreEnd)){
+                this.addWord(text, tokenStart, i, results);
+                add(text, i, i+1, results);
+                tokenStart = i+1;
+            }
+        }
+        this.addWord(text, tokenStart, coreEnd, results);
+        for (int i=coreEnd; i<end; i++){
+            add(text, i, i+1, results);
+        }
+    }
+
+    // adds a word, splitting off English clitics.
+    private void addWord(String text, int start, int end, List<Span> results){
+        if (start>=end) return;
+        int length = end - start;
+        if (length>3 && text.regionMatches(true, end-3, "n't", 0, 3)){
+            add(text, start, end-3, results);
+            add(text, end-3, end, results);
+            return;
+        }
+        for (String clitic : CLITICS){
+            int apostrophe = end - clitic.length() - 1;
+            if (apostrophe>start && text.charAt(apostrophe)=='\''
+                    && text.regionMatches(true, apostrophe+1, clitic, 0, clitic.length())){
+                add(text, start, apostrophe, results);
+                add(text, apostrophe, end, results);
+                return;
+            }
+        }
+        add(text, start, end, results);
+    }
+
+    // true if the punctuation character at the given position connects the characters before and after it.
+    private boolean joins(String text, int i, int start, int end){
+        if (i==start || i==end-1) return false;
+        byte before = this.charClass(text.charAt(i-1));
+        byte after = this.charClass(text.charAt(i+1));
+        switch (text.charAt(i)){
+            case ',':
+            case ':':
+                return before==DIGIT && after==DIGIT;
+            case '.':
+            case '-':
+            case '/':
+            case '\'':
+                return (before==LETTER || before==DIGIT) && (after==LETTER || after==DIGIT);
+            default:
+                return false;
+        }
+    }
+
+    // true if the word ends with a period that belongs to it, as in "U.S.", "J." or "7.0.".
+    private boolean isAbbreviation(String text, int start, int end){
+        if (text.charAt(end-1)!='.' || end-start<2) return false;
+        if (end-start==2) return Character.isUpperCase(text.charAt(start));
+        byte before = this.charClass(text.charAt(end-2));
+        return (before==LETTER || before==DIGIT) && text.lastIndexOf('.', end-2)>=start;
+    }
+
+    // true if the punctuation character at the start of a word belongs to it, as in ".tex" or "/usr".
+    private boolean isPrefix(String text, int i, int end){
+        char c = text.charAt(i);
+        if (c!='.' && c!='/' && c!=':') return false;
+        if (i+1>=end) return false;
+        byte after = this.charClass(text.charAt(i+1));
+        return after==LETTER || after==DIGIT || (c=='/' && text.charAt(i+1)=='.');
+    }
+
+    private byte charClass(char c){
+        if (c<this.classes.length) return this.classes[c];
+        return classify(c);
+    }
+
+    private static byte classify(char c){
+        if (Character.isWhitespace(c) || Character.getType(c)==Character.SPACE_SEPARATOR) return WHITESPACE;
+        if (Character.isLetter(c)) return LETTER;
+        if (Character.isDigit(c)) return DIGIT;
+        return OTHER;
+    }
+
+    private static void add(String text, int start, int end, List<Span> results){
+        results.add(new Span(text.substring(start, end), start, end));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded cache for the output of a tagger, so that sentences that occur again and again (headlines, boilerplate)
+ * are only tagged once. Keys are the token surfaces of a sentence; when the cache is full, the least recently used
+ * entry is dropped.
+ * The cache is split into segments with a lock each, so it can be used by many threads. Hits, misses, evictions and the
+ * size are reported like by ToolPool, to the default registry of SharedMetricRegistries or to a private registry,
+ * with a number appended to the name if another cache already reports under it. close() removes the metrics again.
+ */
+public class TaggerCache {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final String name;
+    private final String metricName;
+    private final int maxSize;
+    private final Segment[] segments;
+
+    private final MetricRegistry metrics;
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter evictions;
+
+    /**
+     * @param name Name under which the metrics of the cache are reported, e.g. "opennlp.tagger.en.cache".
+     * @param maxSize Maximum number of sentences in the cache.
+     */
+    public TaggerCache(String name, int maxSize){
+        if (maxSize<1) throw new IllegalArgumentException("maxSize must be at least 1.");
+        this.name = name;
+        this.maxSize = maxSize;
+        int segmentCount = Math.min(MAX_SEGMENTS, maxSize);
+        this.segments = new Segment[segmentCount];
+        for (int i=0; i<segmentCount; i++){
+            // distribute maxSize over the segments, so the capacities add up to exactly maxSize.
+            this.segments[i] = new Segment(maxSize/segmentCount + (i<maxSize%segmentCount ? 1 : 0));
+        }
+        MetricRegistry registry = SharedMetricRegistries.tryGetDefault();
+        this.metrics = registry!=null ? registry : new MetricRegistry();
+        this.metricName = this.registerGauge();
+        this.hits = this.metrics.meter(MetricRegistry.name(this.metricName, "hits"));
+        this.misses = this.metrics.meter(MetricRegistry.name(this.metricName, "misses"));
+        this.evictions = this.metrics.meter(MetricRegistry.name(this.metricName, "evictions"));
+    }
+
+    /**
+     * @return The tags for the tokens, or null if they are not in the cache. The array must not be modified.
+     */
+    public String[] get(String[] tokens){
+        Key key = new Key(tokens);
+        Segment segment = this.getSegment(key);
+        String[] tags;
+        synchronized (segment){
+            tags = segment.get(key);
+        }
+        if (tags==null){
+            this.misses.mark();
+        }else{
+            this.hits.mark();
+        }
+        return tags;
+    }
+
+    /**
+     * Adds the tags for the tokens. Neither array must be modified afterwards.
+     */
+    public void put(String[] tokens, String[] tags){
+        Key key = new Key(tokens);
+        Segment segment = this.getSegment(key);
+        boolean evicted;
+        synchronized (segment){
+            evicted = segment.put(key, tags);
+        }
+        if (evicted) this.evictions.mark();
+    }
+
+    public void clear(){
+        for (Segment segment : this.segments){
+            synchronized (segment){
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return The number of sentences in the cache.
+     */
+    public int size(){
+        int size = 0;
+        for (Segment segment : this.segments){
+            synchronized (segment){
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes the metrics of the cache from the registry and drops its entries. The cache must not be used afterwards.
+     */
+    public void close(){
+        this.metrics.remove(MetricRegistry.name(this.metricName, "size"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "hits"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "misses"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "evictions"));
+        this.clear();
+    }
+
+    public String getName(){
+        return this.name;
+    }
+
+    /**
+     * @return The name under which the metrics of the cache are reported.
+     */
+    public String getMetricName(){
+        return this.metricName;
+    }
+
+    public int getMaxSize(){
+        return this.maxSize;
+    }
+
+    /**
+     * @return The registry to which the cache reports its metrics.
+     */
+    public MetricRegistry getMetrics(){
+        return this.metrics;
+    }
+
+    // registers the size gauge under the first name that is not taken yet and returns that name.
+    private String registerGauge(){
+        Gauge<Integer> size = this::size;
+        for (int i=1; ; i++){
+            String metricName = i==1 ? this.name : this.name + "-" + i;
+            try{
+                this.metrics.register(MetricRegistry.name(metricName, "size"), size);
+            }catch(IllegalArgumentException e){
+                continue;
+            }
+            return metricName;
+        }
+    }
+
+    private Segment getSegment(Key key){
+        int hash = key.hash ^ (key.hash >>> 16);
+        return this.segments[(hash & 0x7fffffff) % this.segments.length];
+    }
+
+    // LRU map: access-ordered, drops its eldest entry when it grows beyond its capacity.
+    private static class Segment {
+
+        private final LinkedHashMap<Key, String[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        private Segment(int capacity){
+            this.capacity = capacity;
+        }
+
+        private String[] get(Key key){
+            return this.entries.get(key);
+        }
+
+        /**
+         * @return true if the eldest entry was dropped.
+         */
+        private boolean put(Key key, String[] tags){
+            this.entries.put(key, tags);
+            if (this.entries.size()<=this.capacity) return false;
+            Iterator<Key> eldest = this.entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            return true;
+        }
+
+        private void clear(){
+            this.entries.clear();
+        }
+
+        private int size(){
+            return this.entries.size();
+        }
+    }
+
+    // the tokens themselves are part of the key, so that sentences with the same hash are never confused.
+    private static class Key {
+
+        private final String[] tokens;
+        private final int hash;
+
+        private Key(String[] tokens){
+            this.tokens = tokens;
+            this.hash = Arrays.hashCode(tokens);
+        }
+
+        @Override
+        public int hashCode(){
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (this==o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key)o;
+            return this.hash==other.hash && Arrays.equals(this.tokens, other.tokens);
+        }
+    }
+}
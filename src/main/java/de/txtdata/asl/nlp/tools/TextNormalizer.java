@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import java.util.Arrays;
+
+/**
+ * Replaces or deletes single characters of a text in one pass, and keeps track of where each character of the result
+ * came from, so that offsets in the normalized text can be mapped back to the original text.
+ * The replacements are kept in a table indexed by character. Configure the normalizer with replace() before using it;
+ * after that, it can be used by several threads at the same time.
+ */
+public class TextNormalizer {
+
+    private char minChar = Character.MAX_VALUE;
+    private char maxChar = Character.MIN_VALUE;
+    private char[][] table = new char[0][];
+
+    private final ThreadLocal<char[]> charBuffer = ThreadLocal.withInitial(() -> new char[256]);
+    private final ThreadLocal<int[]> offsetBuffer = ThreadLocal.withInitial(() -> new int[256]);
+
+    /**
+     * @param c The character to replace.
+     * @param replacement The replacement, or "" to delete the character.
+     */
+    public TextNormalizer replace(char c, String replacement){
+        char newMin = (char)Math.min(this.minChar, c);
+        char newMax = (char)Math.max(this.maxChar, c);
+        char[][] newTable = new char[newMax - newMin + 1][];
+        for (int i=0; i<this.table.length; i++){
+            newTable[this.minChar + i - newMin] = this.table[i];
+        }
+        newTable[c - newMin] = replacement.toCharArray();
+        this.minChar = newMin;
+        this.maxChar = newMax;
+        this.table = newTable;
+        return this;
+    }
+
+    /**
+     * @return The normalized text. If nothing had to be replaced, its text is the input itself.
+     */
+    public Normalized normalize(String text){
+        int length = text.length();
+        int first = this.findFirst(text);
+        if (first==length) return new Normalized(text, null);
+
+        char[] chars = this.charBuffer.get();
+        int[] offsets = this.offsetBuffer.get();
+        if (chars.length<length){
+            chars = new char[Math.max(length, chars.length*2)];
+            offsets = new int[chars.length];
+        }
+        text.getChars(0, first, chars, 0);
+        for (int i=0; i<first; i++){
+            offsets[i] = i;
+        }
+        int size = first;
+        for (int i=first; i<length; i++){
+            char c = text.charAt(i);
+            char[] replacement = c>=this.minChar && c<=this.maxChar ? this.table[c - this.minChar] : null;
+            if (replacement==null){
+                if (size==chars.length){
+                    chars = Arrays.copyOf(chars, chars.length*2);
+                    offsets = Arrays.copyOf(offsets, chars.length);
+                }
+                chars[size] = c;
+                offsets[size++] = i;
+            }else{
+                for (char r : replacement){
+                    if (size==chars.length){
+                        chars = Arrays.copyOf(chars, chars.length*2);
+                        offsets = Arrays.copyOf(offsets, chars.length);
+                    }
+                    chars[size] = r;
+                    offsets[size++] = i;
+                }
+            }
+        }
+        this.charBuffer.set(chars);
+        this.offsetBuffer.set(offsets);
+        int[] map = Arrays.copyOf(offsets, size+1);
+        map[size] = length;
+        return new Normalized(new String(chars, 0, size), map);
+    }
+
+    private int findFirst(String text){
+        for (int i=0; i<text.length(); i++){
+            char c = text.charAt(i);
+            if (c>=this.minChar && c<=this.maxChar && this.table[c - this.minChar]!=null) return i;
+        }
+        return text.length();
+    }
+
+    /**
+     * A normalized text, together with the offsets of its characters in the original text.
+     */
+    public static class Normalized {
+
+        public final String text;
+        // offsets[i] is the position in the original text of the i-th character; null if text is the original.
+        private final int[] offsets;
+
+        private Normalized(String text, int[] offsets){
+            this.text = text;
+            this.offsets = offsets;
+        }
+
+        public boolean isChanged(){
+            return this.offsets!=null;
+        }
+
+        /**
+         * @return The position in the original text of the character at the given position of the normalized text.
+         */
+        public int getOriginalStart(int start){
+            if (this.offsets==null) return start;
+            return this.offsets[start];
+        }
+
+        /**
+         * @return The position in the normalized text of the first character that stems from the given position of
+         * the original text or a later one.
+         */
+        public int getNormalizedPosition(int original){
+            if (this.offsets==null) return original;
+            int low = 0;
+            int high = this.offsets.length-1;
+            while (low<high){
+                int middle = (low+high) >>> 1;
+                if (this.offsets[middle]<original) low = middle+1; else high = middle;
+            }
+            return low;
+        }
+
+        /**
+         * @return The position in the original text that corresponds to the given (exclusive) end position in the
+         * normalized text. Characters that were deleted directly before the end are not included.
+         */
+        public int getOriginalEnd(int end){
+            if (this.offsets==null || end==0) return end;
+            return this.offsets[end-1] + 1;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import de.txtdata.asl.util.misc.AslException;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of instances of a tool that is not thread-safe, e.g. an OpenNLP TokenizerME. Instances are created on
+ * demand, up to the maximum size; after that, threads wait until an instance is released.
+ * The pool reports its size and how long threads waited for an instance to the default registry of
+ * SharedMetricRegistries (which the server sets to its own registry), or to a private registry if there is none.
+ * If another pool already reports under the same name, a number is appended to the name, e.g. "opennlp.tagger.en-2".
+ * close() removes the metrics again, so that the registry does not keep the pool and its tools reachable.
+ */
+public class ToolPool<T> {
+
+    private final String name;
+    private final String metricName;
+    private final Supplier<T> factory;
+    private final int maxSize;
+    private final BlockingQueue<T> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    private final MetricRegistry metrics;
+    private final Timer waits;
+    private final Meter contended;
+
+    /**
+     * @param name Name under which the metrics of the pool are reported, e.g. "opennlp.tokenizer.en".
+     * @param maxSize Maximum number of instances.
+     * @param factory Creates a new instance.
+     */
+    public ToolPool(String name, int maxSize, Supplier<T> factory){
+        if (maxSize<1) throw new IllegalArgumentException("maxSize must be at least 1.");
+        this.name = name;
+        this.maxSize = maxSize;
+        this.factory = factory;
+        MetricRegistry registry = SharedMetricRegistries.tryGetDefault();
+        this.metrics = registry!=null ? registry : new MetricRegistry();
+        this.metricName = this.registerGauges();
+        this.waits = this.metrics.timer(MetricRegistry.name(this.metricName, "wait"));
+        this.contended = this.metrics.meter(MetricRegistry.name(this.metricName, "contended"));
+    }
+
+    /**
+     * Creates a pool with one instance per available processor.
+     */
+    public ToolPool(String name, Supplier<T> factory){
+        this(name, Runtime.getRuntime().availableProcessors(), factory);
+    }
+
+    /**
+     * @return An instance that must be given back with release().
+     */
+    public T acquire(){
+        T tool = this.idle.poll();
+        if (tool!=null) return tool;
+        if (this.created.incrementAndGet()<=this.maxSize){
+            try{
+                return this.factory.get();
+            }catch(RuntimeException e){
+                this.created.decrementAndGet();
+                throw e;
+            }
+        }
+        this.created.decrementAndGet();
+        this.contended.mark();
+        Timer.Context context = this.waits.time();
+        try{
+            return this.idle.take();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new AslException(e);
+        }finally{
+            context.stop();
+        }
+    }
+
+    public void release(T tool){
+        this.idle.offer(tool);
+    }
+
+    /**
+     * Applies the function to an instance of the pool and releases the instance afterwards.
+     */
+    public <R> R apply(Function<T, R> function){
+        T tool = this.acquire();
+        try{
+            return function.apply(tool);
+        }finally{
+            this.release(tool);
+        }
+    }
+
+    /**
+     * Removes the metrics of the pool from the registry and drops the idle instances. The pool must not be used
+     * afterwards.
+     */
+    public void close(){
+        this.metrics.remove(MetricRegistry.name(this.metricName, "size"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "idle"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "wait"));
+        this.metrics.remove(MetricRegistry.name(this.metricName, "contended"));
+        this.idle.clear();
+    }
+
+    public String getName(){
+        return this.name;
+    }
+
+    /**
+     * @return The name under which the metrics of the pool are reported.
+     */
+    public String getMetricName(){
+        return this.metricName;
+    }
+
+    public int getMaxSize(){
+        return this.maxSize;
+    }
+
+    /**
+     * @return The number of instances that have been created.
+     */
+    public int size(){
+        return this.created.get();
+    }
+
+    /**
+     * @return The registry to which the pool reports its metrics.
+     */
+    public MetricRegistry getMetrics(){
+        return this.metrics;
+    }
+
+    // registers the gauges under the first name that is not taken yet and returns that name.
+    private String registerGauges(){
+        Gauge<Integer> size = this.created::get;
+        Gauge<Integer> idle = this.idle::size;
+        for (int i=1; ; i++){
+            String metricName = i==1 ? this.name : this.name + "-" + i;
+            try{
+                this.metrics.register(MetricRegistry.name(metricName, "size"), size);
+            }catch(IllegalArgumentException e){
+                continue;
+            }
+            this.metrics.register(MetricRegistry.name(metricName, "idle"), idle);
+            return metricName;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.server;
+
+import de.txtdata.asl.nlp.annotators.WhitelistAnnotator;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task that re-reads the dictionaries of all registered WhitelistAnnotators without restarting the service.
+ * Triggered with: POST http://host:adminPort/tasks/reload-dictionaries
+ */
+public class ReloadDictionariesTask extends Task {
+
+    private List<WhitelistAnnotator> annotators;
+
+    public ReloadDictionariesTask(List<WhitelistAnnotator> annotators){
+        super("reload-dictionaries");
+        this.annotators = annotators;
+    }
+
+    @Override
+    public void execute(Map<String, List<String>> parameters, PrintWriter output) throws Exception {
+        for (WhitelistAnnotator annotator : this.annotators){
+            long start = System.currentTimeMillis();
+            annotator.reload();
+            output.println("Reloaded " + annotator.getClass().getSimpleName() + " in " + (System.currentTimeMillis()-start) + " ms.");
+        }
+    }
+}
@@ -18,8 +18,13 @@
 
 package de.txtdata.asl.server;
 
+import com.codahale.metrics.SharedMetricRegistries;
 import de.txtdata.asl.examples.ChunkerPipeline;
+import de.txtdata.asl.nlp.annotators.WhitelistAnnotator;
 import de.txtdata.asl.nlp.models.Language;
+import de.txtdata.asl.nlp.tools.ITokenizer;
+import de.txtdata.asl.nlp.tools.RuleBasedTokenizer;
+import de.txtdata.asl.nlp.tools.TaggerCache;
 import de.txtdata.asl.server.endpoints.api.APIService;
 import de.txtdata.asl.server.endpoints.html.HTMLDemo;
 import de.txtdata.asl.server.endpoints.opennlp.ServiceOpenNLP;
@@ -30,6 +35,8 @@ import io.dropwizard.setup.Environment;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ServiceApplication extends Application<ServiceConfiguration> {
 
@@ -38,6 +45,9 @@ public class ServiceApplication extends Application<ServiceConfiguration> {
 
     public static ChunkerPipeline chunker;
 
+    // annotators whose dictionaries are re-read by the reload-dictionaries admin task.
+    public static List<WhitelistAnnotator> dictionaryAnnotators = new CopyOnWriteArrayList<>();
+
     public static void main(String[] args) throws Exception {
         if (args.length==0){
             String[] defaultArgs = {"server", "config.yml"};
@@ -54,6 +64,10 @@ public class ServiceApplication extends Application<ServiceConfiguration> {
 
     @Override
     public void initialize(Bootstrap<ServiceConfiguration> bootstrap){
+        // tool pools report their metrics to the default registry, so make that the one exposed by the server.
+        if (SharedMetricRegistries.tryGetDefault()==null){
+            SharedMetricRegistries.setDefault("default", bootstrap.getMetricRegistry());
+        }
         ServiceApplication.chunker = new ChunkerPipeline(Language.ENGLISH);
         ServiceApplication.chunker.initialize();
     }
@@ -71,9 +85,29 @@ public class ServiceApplication extends Application<ServiceConfiguration> {
         final ServiceOpenNLP openNLP = new ServiceOpenNLP();
         environment.jersey().register(openNLP);
 
+        if ("rules".equalsIgnoreCase(configuration.getTokenizer())){
+            ITokenizer tokenizer = new RuleBasedTokenizer();
+            ServiceApplication.chunker.setTokenizer(tokenizer);
+            openNLP.setTokenizer(tokenizer);
+        }
+        if (configuration.getTaggerCacheSize()>0){
+            String name = "opennlp.tagger." + ServiceApplication.chunker.getLanguage().getCode() + ".cache";
+            TaggerCache cache = new TaggerCache(name, configuration.getTaggerCacheSize());
+            ServiceApplication.chunker.setTaggerCache(cache);
+            openNLP.setTaggerCache(cache);
+        }
+        if (configuration.getDictionaries()!=null && !configuration.getDictionaries().isEmpty()){
+            WhitelistAnnotator annotator = new WhitelistAnnotator(Language.ENGLISH, configuration.getDictionaries());
+            ServiceApplication.chunker.addAnnotator(annotator);
+            dictionaryAnnotators.add(annotator);
+            if (configuration.isWatchDictionaries()) annotator.startWatching();
+        }
+
         final ServiceHealthCheck healthCheck = new ServiceHealthCheck();
         environment.healthChecks().register("default", healthCheck);
 
+        environment.admin().addTask(new ReloadDictionariesTask(dictionaryAnnotators));
+
 
         if ("true".equalsIgnoreCase(configuration.getOfflineMode())){
             this.offline = true;
@@ -28,6 +28,14 @@ public class ServiceConfiguration extends Configuration {
     @NotEmpty
     private String serviceName;
     private String offlineMode;
+    // "opennlp" (default) or "rules" for the RuleBasedTokenizer.
+    private String tokenizer;
+    // number of sentences for which the tagger output is cached; 0 (default) for no cache.
+    private int taggerCacheSize;
+    // file or directory of whitelist dictionaries that are matched in addition to chunking; none if empty.
+    private String dictionaries;
+    // if true, the dictionaries are reloaded whenever files in that location change.
+    private boolean watchDictionaries;
 
     @JsonProperty
     public String getServiceName() {
@@ -48,4 +56,44 @@ public class ServiceConfiguration extends Configuration {
     public void setOfflineMode(String serviceName) {
         this.offlineMode = serviceName;
     }
+
+    @JsonProperty
+    public String getTokenizer() {
+        return this.tokenizer;
+    }
+
+    @JsonProperty
+    public void setTokenizer(String tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    @JsonProperty
+    public int getTaggerCacheSize() {
+        return this.taggerCacheSize;
+    }
+
+    @JsonProperty
+    public void setTaggerCacheSize(int taggerCacheSize) {
+        this.taggerCacheSize = taggerCacheSize;
+    }
+
+    @JsonProperty
+    public String getDictionaries() {
+        return this.dictionaries;
+    }
+
+    @JsonProperty
+    public void setDictionaries(String dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    @JsonProperty
+    public boolean isWatchDictionaries() {
+        return this.watchDictionaries;
+    }
+
+    @JsonProperty
+    public void setWatchDictionaries(boolean watchDictionaries) {
+        this.watchDictionaries = watchDictionaries;
+    }
 }
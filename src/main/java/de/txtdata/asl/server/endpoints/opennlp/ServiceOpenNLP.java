@@ -21,9 +21,11 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import de.txtdata.asl.nlp.models.Language;
 import de.txtdata.asl.nlp.models.Span;
 import de.txtdata.asl.nlp.models.Word;
+import de.txtdata.asl.nlp.tools.ITokenizer;
 import de.txtdata.asl.nlp.tools.OpenNLPSentenceSplitter;
 import de.txtdata.asl.nlp.tools.OpenNLPTagger;
 import de.txtdata.asl.nlp.tools.OpenNLPTokenizer;
+import de.txtdata.asl.nlp.tools.TaggerCache;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -41,7 +43,7 @@ public class ServiceOpenNLP {
     public String modelDirectory = ".\\data\\models";
 
     private static OpenNLPSentenceSplitter openNLPSentenceSplitter;
-    private static OpenNLPTokenizer openNLPTokenizer;
+    private static ITokenizer openNLPTokenizer;
     private static OpenNLPTagger openNLPTagger;
 
     public ServiceOpenNLP(){
@@ -50,6 +52,22 @@ public class ServiceOpenNLP {
         this.openNLPTagger = new OpenNLPTagger(language, modelDirectory);
     }
 
+    /**
+     * Replaces the tokenizer, e.g. with a RuleBasedTokenizer. The previous tokenizer is closed.
+     */
+    public void setTokenizer(ITokenizer tokenizer){
+        ITokenizer previous = ServiceOpenNLP.openNLPTokenizer;
+        ServiceOpenNLP.openNLPTokenizer = tokenizer;
+        if (previous!=null && previous!=tokenizer) previous.close();
+    }
+
+    /**
+     * Lets the tagger keep its output for sentences it has seen before.
+     */
+    public void setTaggerCache(TaggerCache cache){
+        ServiceOpenNLP.openNLPTagger.setCache(cache);
+    }
+
     @GET
     @Timed
     public List<Sentence> receiveGET(
@@ -67,6 +85,7 @@ public class ServiceOpenNLP {
         }
         List<Sentence> result = new ArrayList<>();
 
+        List<List<Span>> tokens = new ArrayList<>();
         for (Span s : splitted){
             Sentence sentence = new Sentence();
             sentence.surface = s.getSurface();
@@ -74,23 +93,28 @@ public class ServiceOpenNLP {
             sentence.ends = s.getEnds();
             result.add(sentence);
             if (tokenize==null || tokenize){
+                tokens.add(openNLPTokenizer.getTokensAsSpans(sentence.surface));
+            }
+        }
+        if (tokenize==null || tokenize){
+            Word[][] words = null;
+            if (tag==null || tag){
+                words = openNLPTagger.getTaggedSentences(tokens);
+            }
+            for (int i=0; i<result.size(); i++){
+                Sentence sentence = result.get(i);
                 sentence.tokens = new ArrayList<>();
-                List<Span> spans = openNLPTokenizer.getTokensAsSpans(sentence.surface);
-                List<Word> words = new ArrayList<>();
-                if (tag==null || tag){
-                    words = openNLPTagger.getTaggedWords(spans);
-                }
-                int i=0;
-                for (Span span : spans) {
+                int j=0;
+                for (Span span : tokens.get(i)) {
                     Token token = new Token();
                     token.surface = span.getSurface();
                     token.starts = sentence.starts + span.getStarts();
                     token.ends = sentence.starts + span.getEnds();
                     sentence.tokens.add(token);
-                    if (tag==null || tag){
-                        token.tag = words.get(i).getPOS();
+                    if (words!=null){
+                        token.tag = words[i][j].getPOS();
                     }
-                    i++;
+                    j++;
                 }
             }
         }
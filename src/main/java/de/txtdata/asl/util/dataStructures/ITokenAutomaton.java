@@ -0,0 +1,68 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.util.dataStructures;
+
+import java.util.List;
+
+/**
+ * Interface for Aho-Corasick automata over whole tokens. States are ints, with 0 being the root state.
+ * Implemented by TokenAutomaton, which keeps its data on the heap, and by automata that read their data directly from
+ * a file.
+ */
+public interface ITokenAutomaton<T> {
+
+    int ROOT = 0;
+    int NONE = -1;
+    int UNKNOWN_TOKEN = -1;
+
+    /**
+     * @return The ID of the token, or UNKNOWN_TOKEN if it does not occur in the dictionary.
+     */
+    int getTokenId(String token);
+
+    /**
+     * @return The symbol table whose IDs this automaton uses, so that IDs that were looked up in it before can be used
+     * instead of calling getTokenId(), or null if the automaton has no such table.
+     */
+    default TokenSymbols getTokenSymbols(){
+        return null;
+    }
+
+    /**
+     * Follows the transition for one token, using failure links where necessary.
+     * @return The new state, which is ROOT if no dictionary entry can continue with this token.
+     */
+    int next(int state, int tokenId);
+
+    /**
+     * @return The first state on the failure chain of the given state (including the state itself) that has meanings,
+     * or NONE. Matches ending at the current position are found by calling getOutput(getFailure(s)) repeatedly.
+     */
+    int getOutput(int state);
+
+    int getFailure(int state);
+
+    /**
+     * @return The number of tokens on the path from the root to this state.
+     */
+    int getDepth(int state);
+
+    List<T> getMeanings(int state);
+
+    int size();
+}
@@ -19,18 +19,38 @@ package de.txtdata.asl.util.dataStructures;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 
 /**
  * Dictionary that keeps entries in a trie-like data structure to facilitate fast lookup.
+ * Once all entries are added, the dictionary can be frozen: it then becomes read-only, and each node stores its
+ * children as sorted arrays of token IDs (see TokenSymbols) instead of a map, while nodes with equal meanings share
+ * one meaning list. The map of a frozen node is null, so code that reads a dictionary should use get(), keys() and
+ * getMeanings(), which work on both forms and return the keys in the same order.
+ * Optional tokens (written as "?word" or "word?") are not expanded into copies of the remaining entry. Instead, they are
+ * stored in a separate child dictionary, see getOptional(), whose children can be reached either by matching the token
+ * or by skipping it.
  */
 public class RecursiveDictionary<T>{
 
     public LinkedHashMap<String, RecursiveDictionary<T>> map = new LinkedHashMap<>();
     public List<T> meanings = new ArrayList<>();
     public RecursiveDictionary before = null;
+    // entries whose next token is optional, keyed by that token (without the question mark).
+    public RecursiveDictionary<T> optional = null;
+    // true if an entry with optional tokens was added to this dictionary.
+    private boolean optionalTokens = false;
 
+    // only set for frozen dictionaries, in which case map is null. Children are sorted by token ID; keyOrder holds
+    // their positions in the order in which the keys were added, or is null if both orders are the same.
+    private TokenSymbols symbols = null;
+    private int[] keyIds = null;
+    private RecursiveDictionary<T>[] children = null;
+    private int[] keyOrder = null;
 
     public RecursiveDictionary(){
     }
@@ -40,28 +60,29 @@ public class RecursiveDictionary<T>{
     }
 
     public void add(String[] keys, T object){
+        if (this.isFrozen()) throw new UnsupportedOperationException("RecursiveDictionary is frozen.");
         RecursiveDictionary<T> rd = null;
         RecursiveDictionary<T> oldRD = this;
         for (int i=0; i<keys.length ;i++){
             String part = keys[i];
             if (part.length()==0) continue;
+            RecursiveDictionary<T> parent = oldRD;
             if ((part.startsWith("?") || part.endsWith("?")) && part.length()>1){
                 if (part.startsWith("?")) part = part.substring(1,part.length());
                 if (part.endsWith("?")) part = part.substring(0,part.length()-1);
-                String[] newKeys = Arrays.copyOfRange(keys, i+1, keys.length);
-                oldRD.add(newKeys, object);
-                if(newKeys.length>0){
-                    oldRD.add(newKeys, object);
-                }else{
-                    oldRD.meanings.add(object);
+                this.optionalTokens = true;
+                if (oldRD.optional == null){
+                    oldRD.optional = new RecursiveDictionary<T>();
+                    oldRD.optional.before = oldRD;
                 }
+                parent = oldRD.optional;
             }
-            rd = oldRD.map.get(part);
+            rd = parent.map.get(part);
             if (rd == null) {
                 rd = new RecursiveDictionary<T>();
-                oldRD.map.put(part, rd);
+                parent.map.put(part, rd);
             }
-            rd.before = oldRD;
+            rd.before = parent;
             oldRD = rd;
         }
         if (rd!=null) {
@@ -71,8 +92,215 @@ public class RecursiveDictionary<T>{
         }
     }
 
+    /**
+     * Merges all entries of another dictionary into this one. Nodes of the other dictionary that have no counterpart
+     * here are taken over, so the other dictionary should not be used afterwards.
+     */
+    public void addAll(RecursiveDictionary<T> other){
+        if (this.isFrozen()) throw new UnsupportedOperationException("RecursiveDictionary is frozen.");
+        this.optionalTokens = this.optionalTokens || other.optionalTokens;
+        for (T meaning : other.getMeanings()){
+            if (!this.meanings.contains(meaning)){
+                this.meanings.add(meaning);
+            }
+        }
+        for (String key : other.keys()){
+            RecursiveDictionary<T> otherChild = other.get(key);
+            RecursiveDictionary<T> child = this.map.get(key);
+            if (child==null){
+                otherChild.before = this;
+                this.map.put(key, otherChild);
+            }else{
+                child.addAll(otherChild);
+            }
+        }
+        if (other.optional!=null){
+            if (this.optional==null){
+                other.optional.before = this;
+                this.optional = other.optional;
+            }else{
+                this.optional.addAll(other.optional);
+            }
+        }
+    }
+
+    /**
+     * @return The child node for the given key, or null.
+     */
+    public RecursiveDictionary<T> get(String key){
+        if (this.keyIds==null) return this.map.get(key);
+        int id = this.symbols.lookUp(key);
+        if (id==TokenSymbols.UNKNOWN) return null;
+        int index = Arrays.binarySearch(this.keyIds, id);
+        if (index<0) return null;
+        return this.children[index];
+    }
+
+    /**
+     * @return The child node for the token with the given ID in getSymbols(), or null. Only for frozen dictionaries.
+     */
+    public RecursiveDictionary<T> get(int tokenId){
+        if (this.keyIds==null) throw new UnsupportedOperationException("RecursiveDictionary is not frozen.");
+        if (tokenId==TokenSymbols.UNKNOWN) return null;
+        int index = Arrays.binarySearch(this.keyIds, tokenId);
+        if (index<0) return null;
+        return this.children[index];
+    }
+
+    /**
+     * Adds a child node. Only possible as long as the dictionary is not frozen.
+     */
+    public void put(String key, RecursiveDictionary<T> child){
+        if (this.isFrozen()) throw new UnsupportedOperationException("RecursiveDictionary is frozen.");
+        this.map.put(key, child);
+    }
+
+    /**
+     * @return The keys of all child nodes, in the order in which they were added.
+     */
+    public Collection<String> keys(){
+        if (this.keyIds==null) return this.map.keySet();
+        List<String> keys = new ArrayList<>(this.keyIds.length);
+        for (int i=0; i<this.keyIds.length; i++){
+            int index = this.keyOrder==null ? i : this.keyOrder[i];
+            keys.add(this.symbols.getToken(this.keyIds[index]));
+        }
+        return keys;
+    }
+
+    public int getKeyCount(){
+        if (this.keyIds==null) return this.map.size();
+        return this.keyIds.length;
+    }
+
+    /**
+     * @return The dictionary holding the entries whose next token is optional, or null. Its children are reached from
+     * this node either by matching their key or without consuming a token, see getSkipClosure().
+     */
+    public RecursiveDictionary<T> getOptional(){
+        return this.optional;
+    }
+
+    /**
+     * @return true if entries with optional tokens were added to this dictionary.
+     */
+    public boolean hasOptionalTokens(){
+        return this.optionalTokens;
+    }
+
+    /**
+     * @return This node, followed by all nodes that can be reached from it by skipping optional tokens, and the
+     * optional dictionaries of all these nodes. Matching a token against all returned nodes is equivalent to matching
+     * it against the fully expanded dictionary.
+     */
+    public List<RecursiveDictionary<T>> getSkipClosure(){
+        if (this.optional==null) return Collections.singletonList(this);
+        List<RecursiveDictionary<T>> results = new ArrayList<>();
+        this.addSkipClosure(results);
+        return results;
+    }
+
+    private void addSkipClosure(List<RecursiveDictionary<T>> results){
+        results.add(this);
+        if (this.optional==null) return;
+        results.add(this.optional);
+        for (String key : this.optional.keys()){
+            this.optional.get(key).addSkipClosure(results);
+        }
+    }
+
+    public List<T> getMeanings(){
+        return this.meanings;
+    }
+
+    public boolean hasMeanings(){
+        return !this.meanings.isEmpty();
+    }
+
+    public boolean isFrozen(){
+        return this.keyIds!=null;
+    }
+
+    /**
+     * @return The symbol table of the token IDs of a frozen dictionary, which all its nodes share, or null.
+     */
+    public TokenSymbols getSymbols(){
+        return this.symbols;
+    }
+
+    /**
+     * Turns this dictionary and all its descendants into the compact, read-only form.
+     * The dictionary can still be used for matching afterwards, but no entries can be added.
+     */
+    public void freeze(){
+        this.freeze(new TokenSymbols(), new HashMap<>());
+    }
+
+    private void freeze(TokenSymbols symbols, HashMap<List<T>,List<T>> sharedMeanings){
+        if (this.isFrozen()) return;
+        int[] ids = new int[this.map.size()];
+        RecursiveDictionary<T>[] nodes = newArray(this.map.size());
+        int i = 0;
+        for (String key : this.map.keySet()){
+            ids[i] = symbols.intern(key);
+            nodes[i] = this.map.get(key);
+            i++;
+        }
+        Integer[] order = new Integer[ids.length];
+        for (int j=0; j<order.length; j++) order[j] = j;
+        Arrays.sort(order, (a, b) -> Integer.compare(ids[a], ids[b]));
+        this.keyIds = new int[ids.length];
+        this.children = newArray(ids.length);
+        int[] keyOrder = new int[ids.length];
+        boolean sorted = true;
+        for (int j=0; j<order.length; j++){
+            this.keyIds[j] = ids[order[j]];
+            this.children[j] = nodes[order[j]];
+            keyOrder[order[j]] = j;
+            sorted = sorted && order[j]==j;
+        }
+        this.keyOrder = sorted ? null : keyOrder;
+        this.symbols = symbols;
+
+        if (this.meanings.isEmpty()){
+            this.meanings = Collections.emptyList();
+        }else{
+            List<T> shared = sharedMeanings.get(this.meanings);
+            if (shared==null){
+                shared = Collections.unmodifiableList(new ArrayList<>(this.meanings));
+                sharedMeanings.put(shared, shared);
+            }
+            this.meanings = shared;
+        }
+        this.map = null;
+        this.before = null;
+        for (RecursiveDictionary<T> child : this.children){
+            child.freeze(symbols, sharedMeanings);
+        }
+        if (this.optional!=null){
+            this.optional.freeze(symbols, sharedMeanings);
+        }
+    }
+
+    // generic arrays cannot be created directly; the array only ever holds nodes of this dictionary.
+    @SuppressWarnings("unchecked")
+    private static <T> RecursiveDictionary<T>[] newArray(int length){
+        return (RecursiveDictionary<T>[])new RecursiveDictionary<?>[length];
+    }
+
     public String toString(){
-        return this.meanings+this.map.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (String key : this.keys()){
+            if (sb.length()>1) sb.append(", ");
+            sb.append(key).append("=").append(this.get(key));
+        }
+        if (this.optional!=null){
+            for (String key : this.optional.keys()){
+                if (sb.length()>1) sb.append(", ");
+                sb.append("?").append(key).append("=").append(this.optional.get(key));
+            }
+        }
+        return this.meanings+sb.append("}").toString();
     }
 
     public String toString(boolean pretty){
@@ -86,9 +314,15 @@ public class RecursiveDictionary<T>{
             s = s + " " + this.meanings;
         }
         s = s + "\n";
-        for (String key : this.map.keySet()){
+        for (String key : this.keys()){
             s=s+indent+key;
-            s=s+this.map.get(key).toString(indent+"  ");
+            s=s+this.get(key).toString(indent+"  ");
+        }
+        if (this.optional!=null){
+            for (String key : this.optional.keys()){
+                s=s+indent+"?"+key;
+                s=s+this.optional.get(key).toString(indent+"  ");
+            }
         }
         return s;
     }
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.util.dataStructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton over whole tokens, compiled from a RecursiveDictionary.
+ * Every token that occurs as a key in the dictionary is mapped to an ID in a TokenSymbols table (the table of the
+ * dictionary if it is frozen, otherwise a new one that belongs to this automaton), the trie is stored in flat
+ * int arrays and each state has a failure link, so that all dictionary entries can be matched in one linear pass over
+ * a text.
+ * The automaton is a read-only snapshot: changes to the dictionary after compilation are not reflected.
+ * Optional tokens are expanded during compilation: each state stands for all dictionary nodes that can be reached with
+ * the same sequence of tokens, so the automaton has as many states as the dictionary had before optional tokens were
+ * kept in a separate subtree.
+ */
+public class TokenAutomaton<T> implements ITokenAutomaton<T>{
+
+    // children of state s are found at positions childStart[s] to childStart[s+1]-1, sorted by token ID.
+    private int[] childStart;
+    private int[] childTokens;
+    private int[] childStates;
+
+    private TokenSymbols symbols;
+    private int[] failure;
+    private int[] output;
+    private int[] depth;
+    private List<List<T>> meanings;
+
+    public TokenAutomaton(RecursiveDictionary<T> dictionary){
+        this.build(dictionary);
+    }
+
+    @Override
+    public int getTokenId(String token){
+        return this.symbols.lookUp(token);
+    }
+
+    @Override
+    public TokenSymbols getTokenSymbols(){
+        return this.symbols;
+    }
+
+    @Override
+    public int next(int state, int tokenId){
+        if (tokenId==UNKNOWN_TOKEN) return ROOT;
+        while (true){
+            int child = this.getChild(state, tokenId);
+            if (child!=NONE) return child;
+            if (state==ROOT) return ROOT;
+            state = this.failure[state];
+        }
+    }
+
+    /**
+     * @return The child of the given state for the given token, without following failure links, or NONE.
+     */
+    public int getChild(int state, int tokenId){
+        int index = Arrays.binarySearch(this.childTokens, this.childStart[state], this.childStart[state+1], tokenId);
+        if (index<0) return NONE;
+        return this.childStates[index];
+    }
+
+    public int getChildCount(int state){
+        return this.childStart[state+1] - this.childStart[state];
+    }
+
+    /**
+     * @return The token ID of the index-th child of the given state. Children are sorted by token ID.
+     */
+    public int getChildToken(int state, int index){
+        return this.childTokens[this.childStart[state] + index];
+    }
+
+    public int getChildState(int state, int index){
+        return this.childStates[this.childStart[state] + index];
+    }
+
+    @Override
+    public int getOutput(int state){
+        return this.output[state];
+    }
+
+    @Override
+    public int getFailure(int state){
+        return this.failure[state];
+    }
+
+    @Override
+    public int getDepth(int state){
+        return this.depth[state];
+    }
+
+    @Override
+    public List<T> getMeanings(int state){
+        return this.meanings.get(state);
+    }
+
+    @Override
+    public int size(){
+        return this.depth.length;
+    }
+
+    private void build(RecursiveDictionary<T> dictionary){
+        this.symbols = dictionary.isFrozen() ? dictionary.getSymbols() : new TokenSymbols();
+        // number states in breadth-first order, so that parents and failure targets are processed before children.
+        // each state is the set of dictionary nodes reached with its token sequence.
+        List<List<RecursiveDictionary<T>>> nodes = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        nodes.add(dictionary.getSkipClosure());
+        depths.add(0);
+        List<List<int[]>> children = new ArrayList<>();
+        for (int i=0; i<nodes.size(); i++){
+            LinkedHashMap<String, List<RecursiveDictionary<T>>> next = new LinkedHashMap<>();
+            for (RecursiveDictionary<T> node : nodes.get(i)){
+                for (String key : node.keys()){
+                    List<RecursiveDictionary<T>> targets = next.computeIfAbsent(key, k -> new ArrayList<>(1));
+                    for (RecursiveDictionary<T> target : node.get(key).getSkipClosure()){
+                        if (!containsNode(targets, target)) targets.add(target);
+                    }
+                }
+            }
+            List<int[]> pairs = new ArrayList<>();
+            for (Map.Entry<String, List<RecursiveDictionary<T>>> entry : next.entrySet()){
+                pairs.add(new int[]{this.symbols.intern(entry.getKey()), nodes.size()});
+                nodes.add(entry.getValue());
+                depths.add(depths.get(i)+1);
+            }
+            children.add(pairs);
+        }
+
+        int size = nodes.size();
+        this.childStart = new int[size+1];
+        this.childTokens = new int[size-1];
+        this.childStates = new int[size-1];
+        this.failure = new int[size];
+        this.output = new int[size];
+        this.depth = new int[size];
+        this.meanings = new ArrayList<>(size);
+        int position = 0;
+        for (int i=0; i<size; i++){
+            this.childStart[i] = position;
+            List<int[]> pairs = children.get(i);
+            long[] sorted = new long[pairs.size()];
+            for (int j=0; j<sorted.length; j++){
+                sorted[j] = ((long)pairs.get(j)[0] << 32) | pairs.get(j)[1];
+            }
+            Arrays.sort(sorted);
+            for (long pair : sorted){
+                this.childTokens[position] = (int)(pair >>> 32);
+                this.childStates[position] = (int)pair;
+                position++;
+            }
+            this.depth[i] = depths.get(i);
+            this.meanings.add(getMeanings(nodes.get(i)));
+        }
+        this.childStart[size] = position;
+
+        this.meanings.set(ROOT, Collections.emptyList());
+        this.output[ROOT] = NONE;
+        for (int state=0; state<size; state++){
+            for (int c=this.childStart[state]; c<this.childStart[state+1]; c++){
+                int child = this.childStates[c];
+                int token = this.childTokens[c];
+                int fail = ROOT;
+                if (state!=ROOT){
+                    int candidate = this.failure[state];
+                    while (true){
+                        int next = this.getChild(candidate, token);
+                        if (next!=NONE){
+                            fail = next;
+                            break;
+                        }
+                        if (candidate==ROOT) break;
+                        candidate = this.failure[candidate];
+                    }
+                }
+                this.failure[child] = fail;
+                this.output[child] = this.meanings.get(child).isEmpty() ? this.output[fail] : child;
+            }
+        }
+    }
+
+    private static <T> boolean containsNode(List<RecursiveDictionary<T>> nodes, RecursiveDictionary<T> node){
+        for (RecursiveDictionary<T> n : nodes){
+            if (n==node) return true;
+        }
+        return false;
+    }
+
+    private static <T> List<T> getMeanings(List<RecursiveDictionary<T>> nodes){
+        if (nodes.size()==1) return nodes.get(0).getMeanings();
+        List<T> meanings = new ArrayList<>();
+        for (RecursiveDictionary<T> node : nodes){
+            for (T meaning : node.getMeanings()){
+                if (!meanings.contains(meaning)) meanings.add(meaning);
+            }
+        }
+        return meanings;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.util.dataStructures;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table that maps token strings to int IDs.
+ * A frozen RecursiveDictionary stores IDs instead of strings, and all its nodes, as well as a TokenAutomaton compiled
+ * from it, share one table, so that each distinct token is kept in memory only once. The table is only referenced by
+ * the dictionary and the automaton, so its tokens are released together with them, e.g. when WhitelistAnnotator.reload()
+ * replaces a dictionary. IDs are never reused or removed. Lookups are thread-safe and do not block.
+ */
+public class TokenSymbols{
+
+    public static final int UNKNOWN = -1;
+
+    private final ConcurrentHashMap<String,Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] tokens = new String[16];
+    private volatile int size = 0;
+
+    /**
+     * @return The ID of the token, which is newly assigned if the token has not been seen before.
+     */
+    public int intern(String token){
+        Integer id = this.ids.get(token);
+        if (id!=null) return id;
+        synchronized (this){
+            id = this.ids.get(token);
+            if (id!=null) return id;
+            if (this.size==this.tokens.length){
+                this.tokens = Arrays.copyOf(this.tokens, this.size*2);
+            }
+            this.tokens[this.size] = token;
+            this.ids.put(token, this.size);
+            return this.size++;
+        }
+    }
+
+    /**
+     * @return The ID of the token, or UNKNOWN if the token has never been interned.
+     */
+    public int lookUp(String token){
+        Integer id = this.ids.get(token);
+        if (id==null) return UNKNOWN;
+        return id;
+    }
+
+    public String getToken(int id){
+        return this.tokens[id];
+    }
+
+    /**
+     * @return The number of interned tokens. Since IDs are never removed, a token that was unknown while this number
+     * stayed the same is still unknown.
+     */
+    public int size(){
+        return this.size;
+    }
+}
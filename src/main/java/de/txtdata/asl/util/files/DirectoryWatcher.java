@@ -0,0 +1,144 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+package de.txtdata.asl.util.files;
+
+import de.txtdata.asl.util.misc.AslException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helper class that watches a file or a directory tree and runs a callback on a background thread whenever something
+ * in it changes. Changes are collected until nothing has changed for a short while, so that copying many files
+ * triggers the callback only once.
+ */
+public class DirectoryWatcher {
+
+    private File location;
+    private Runnable onChange;
+    private long quietPeriodMillis = 1000;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public DirectoryWatcher(String location, Runnable onChange){
+        this.location = new File(location);
+        this.onChange = onChange;
+    }
+
+    /**
+     * @param quietPeriodMillis Time without further changes after which the callback is run.
+     */
+    public void setQuietPeriod(long quietPeriodMillis){
+        this.quietPeriodMillis = quietPeriodMillis;
+    }
+
+    public synchronized void start(){
+        if (this.thread!=null) return;
+        try{
+            this.watchService = FileSystems.getDefault().newWatchService();
+            if (this.location.isDirectory()){
+                this.register(this.location);
+            }else{
+                this.register(this.location.getAbsoluteFile().getParentFile());
+            }
+        }catch(IOException e){
+            throw new AslException(e);
+        }
+        this.thread = new Thread(this::watch, "DirectoryWatcher-" + this.location.getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public synchronized void stop(){
+        if (this.thread==null) return;
+        try{
+            this.watchService.close();
+        }catch(IOException e){
+            e.printStackTrace();
+        }
+        this.thread.interrupt();
+        this.thread = null;
+    }
+
+    private void register(File directory) throws IOException{
+        directory.toPath().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        File[] items = directory.listFiles();
+        if (items==null || !this.location.isDirectory()) return;
+        for (File item : items){
+            if (item.isDirectory()) this.register(item);
+        }
+    }
+
+    private void watch(){
+        try{
+            while (true){
+                WatchKey key = this.watchService.take();
+                boolean relevant = this.handle(key);
+                // wait until the location has been quiet for a while
+                while ((key = this.watchService.poll(this.quietPeriodMillis, TimeUnit.MILLISECONDS))!=null){
+                    relevant = this.handle(key) || relevant;
+                }
+                if (relevant){
+                    try{
+                        this.onChange.run();
+                    }catch(Exception e){
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }catch(InterruptedException | ClosedWatchServiceException e){
+            // stopped
+        }
+    }
+
+    private boolean handle(WatchKey key){
+        boolean relevant = false;
+        Path directory = (Path)key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()){
+            if (event.kind()==StandardWatchEventKinds.OVERFLOW){
+                relevant = true;
+                continue;
+            }
+            Path changed = directory.resolve((Path)event.context());
+            if (this.location.isDirectory()){
+                relevant = true;
+                if (event.kind()==StandardWatchEventKinds.ENTRY_CREATE && changed.toFile().isDirectory()){
+                    try{
+                        this.register(changed.toFile());
+                    }catch(IOException e){
+                        e.printStackTrace();
+                    }
+                }
+            }else if (changed.toFile().getAbsoluteFile().equals(this.location.getAbsoluteFile())){
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Copyright 2020 Michael Kaisser
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ *  See also https://github.com/txtData/nlp
+ */
+
+package de.txtdata.asl.nlp.tools;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * CharClassifier that classifies as many characters at a time as fit into a vector register, using the incubating
+ * Vector API. Only compiled with the "vector" profile (mvn -Pvector), and only used if the JVM runs with
+ * --add-modules jdk.incubator.vector; CharClassifier.create() falls back to the scalar classifier otherwise.
+ * ASCII characters are classified with vector comparisons; the few other characters are classified like by
+ * CharClassifier, so the results are identical.
+ */
+public class VectorCharClassifier extends CharClassifier {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    private final short[] asciiPunctuations;
+
+    public VectorCharClassifier(String punctuations){
+        super(punctuations);
+        StringBuilder ascii = new StringBuilder();
+        for (char c : punctuations.toCharArray()){
+            if (c<128 && ascii.indexOf(String.valueOf(c))<0) ascii.append(c);
+        }
+        this.asciiPunctuations = new short[ascii.length()];
+        for (int i=0; i<ascii.length(); i++){
+            this.asciiPunctuations[i] = (short)ascii.charAt(i);
+        }
+    }
+
+    @Override
+    public void classify(char[] text, int from, int to, long[] masks){
+        Arrays.fill(masks, 0L);
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i<bound; i+=SPECIES.length()){
+            ShortVector v = ShortVector.fromCharArray(SPECIES, text, i);
+            int shift = i - from;
+            VectorMask<Short> whitespace = v.compare(VectorOperators.UNSIGNED_GE, (short)9)
+                    .and(v.compare(VectorOperators.UNSIGNED_LE, (short)13))
+                    .or(v.compare(VectorOperators.UNSIGNED_GE, (short)0x1C)
+                            .and(v.compare(VectorOperators.UNSIGNED_LE, (short)' ')));
+            VectorMask<Short> punctuation = SPECIES.maskAll(false);
+            for (short p : this.asciiPunctuations){
+                punctuation = punctuation.or(v.compare(VectorOperators.EQ, p));
+            }
+            VectorMask<Short> upper = v.compare(VectorOperators.UNSIGNED_GE, (short)'A')
+                    .and(v.compare(VectorOperators.UNSIGNED_LE, (short)'Z'));
+            VectorMask<Short> lower = v.compare(VectorOperators.UNSIGNED_GE, (short)'a')
+                    .and(v.compare(VectorOperators.UNSIGNED_LE, (short)'z'));
+            VectorMask<Short> digit = v.compare(VectorOperators.UNSIGNED_GE, (short)'0')
+                    .and(v.compare(VectorOperators.UNSIGNED_LE, (short)'9'));
+            VectorMask<Short> blank = v.compare(VectorOperators.UNSIGNED_LE, (short)' ');
+            masks[WHITESPACE]  |= whitespace.toLong() << shift;
+            masks[PUNCTUATION] |= punctuation.toLong() << shift;
+            masks[UPPERCASE]   |= upper.toLong() << shift;
+            masks[LOWERCASE]   |= lower.toLong() << shift;
+            masks[DIGIT]       |= digit.toLong() << shift;
+            masks[BLANK]       |= blank.toLong() << shift;
+            // characters beyond ASCII are not in any of the ranges above
+            long nonAscii = v.compare(VectorOperators.UNSIGNED_GE, (short)128).toLong();
+            while (nonAscii!=0){
+                int lane = Long.numberOfTrailingZeros(nonAscii);
+                this.addClasses(text[i+lane], shift+lane, masks);
+                nonAscii &= nonAscii-1;
+            }
+        }
+        for (; i<to; i++){
+            this.addClasses(text[i], i-from, masks);
+        }
+    }
+}